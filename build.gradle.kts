@@ -28,16 +28,94 @@ tasks.compileJava.configure {
 	dependsOn("extractLibs")
 }
 
+// Native libraries to bundle, with the OS and architecture they support
+val nativeLibs = mapOf(
+	"libjpen-2-4-x86_64.so" to ("linux" to "x86_64"),
+	"jpen-2-3-64.dll" to ("windows" to "x86_64"),
+	"libjpen-2-3.jnilib" to ("macos" to "x86_64")
+)
+val nativesDir = project.layout.buildDirectory.dir("unpacked/${libName}")
+
+/**
+ * Register a task to generate an index of bundled native libraries, so they can be found without scanning the jar.
+ */
+fun registerNativesManifestTask(taskName: String, libs: Map<String, Pair<String, String>>, outputDir: Provider<Directory>) =
+	tasks.register(taskName) {
+		description = "Generate an index of the bundled JPen native libraries"
+		group = "QuPath"
+		dependsOn("extractLibs")
+
+		val outputFile = outputDir.map { it.file("natives/natives.properties") }
+		inputs.dir(nativesDir)
+		inputs.property("nativeLibs", libs.toString())
+		outputs.file(outputFile)
+
+		doLast {
+			val lines = mutableListOf("# JPen native libraries - generated at build time")
+			libs.entries.sortedBy { it.key }.forEachIndexed { i, (name, platform) ->
+				val file = nativesDir.get().file(name).asFile
+				if (!file.isFile)
+					throw GradleException("Native library $name not found in ${nativesDir.get().asFile}")
+				val sha256 = java.security.MessageDigest.getInstance("SHA-256")
+					.digest(file.readBytes())
+					.joinToString("") { "%02x".format(it) }
+				lines += "native.$i.file=$name"
+				lines += "native.$i.os=${platform.first}"
+				lines += "native.$i.arch=${platform.second}"
+				lines += "native.$i.size=${file.length()}"
+				lines += "native.$i.sha256=$sha256"
+			}
+			lines += "native.count=${libs.size}"
+			val output = outputFile.get().asFile
+			output.parentFile.mkdirs()
+			output.writeText(lines.joinToString("\n", postfix = "\n"))
+		}
+	}
+
+val nativesManifestDir = project.layout.buildDirectory.dir("generated/natives-manifest")
+val generateNativesManifest = registerNativesManifestTask("generateNativesManifest", nativeLibs, nativesManifestDir)
+
 tasks.shadowJar {
-	from(project.layout.buildDirectory.file("unpacked/${libName}")) {
+	dependsOn(generateNativesManifest)
+	from(nativesDir) {
 		into("natives/")
+		include(nativeLibs.keys)
+	}
+	from(nativesManifestDir)
+}
 
-		include("'*.dll")
-		include("*.jnilib")
-		include("*.so")
+// Platform-specific jars, containing only the native library needed for one OS & architecture
+val platformShadowJars = nativeLibs.map { (name, platform) ->
+	val classifier = "${platform.first}-${platform.second}"
+	val suffix = classifier.split("-", "_").joinToString("") { it.replaceFirstChar(Char::uppercase) }
+	val manifestDir = project.layout.buildDirectory.dir("generated/natives-manifest-${classifier}")
+	val manifestTask = registerNativesManifestTask("generateNativesManifest${suffix}", mapOf(name to platform), manifestDir)
+	tasks.register<com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar>("shadowJar${suffix}") {
+		description = "Create a jar containing the extension, JPen and the native library for ${classifier}"
+		group = "QuPath"
+		dependsOn(manifestTask)
+		archiveClassifier.set("all-${classifier}")
+		// Inherit the jar manifest only when this task runs, so the jar task isn't created during configuration
+		val jarTask = tasks.jar
+		doFirst {
+			manifest.inheritFrom(jarTask.get().manifest)
+		}
+		from(sourceSets.main.map { it.output })
+		configurations = listOf(project.configurations.runtimeClasspath.get())
+		from(nativesDir) {
+			into("natives/")
+			include(name)
+		}
+		from(manifestDir)
 	}
 }
 
+tasks.register("shadowJarPlatforms") {
+	description = "Create platform-specific jars for each supported OS & architecture"
+	group = "QuPath"
+	dependsOn(platformShadowJars)
+}
+
 dependencies {
 
 	implementation(fileTree(project.layout.buildDirectory.file("unpacked/${libName}")) { include("jpen-2.jar") })
@@ -51,3 +129,8 @@ dependencies {
 
 }
 
+
+tasks.test {
+	// Benchmarks are skipped unless requested, e.g. with 'gradlew test -Dqupath.jpen.benchmark=true'
+	systemProperty("qupath.jpen.benchmark", System.getProperty("qupath.jpen.benchmark", "false"))
+}
@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single daemon thread for the extension's deferred work (e.g. changing JPen's sampling frequency or pausing it).
+ * <p>
+ * Tasks should be short, and must not block waiting for the JavaFX thread.
+ */
+final class BackgroundTimer {
+
+	private BackgroundTimer() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	private static class Holder {
+		private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+			var thread = new Thread(r, "jpen-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+		return Holder.EXECUTOR.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	static void execute(Runnable task) {
+		Holder.EXECUTOR.execute(task);
+	}
+
+}
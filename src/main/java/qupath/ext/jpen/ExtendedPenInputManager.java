@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import qupath.lib.gui.viewer.tools.QuPathPenManager;
+import qupath.lib.gui.viewer.tools.QuPathPenManager.PenInputManager;
+
+/**
+ * Extended {@link PenInputManager} providing access to more of the pen state than QuPath's core interface.
+ * <p>
+ * When the JPen extension is active, the pen manager returned by {@link QuPathPenManager#getPenManager()}
+ * implements this interface; use {@link #getInstance()} to access it.
+ * <p>
+ * All timestamps use the {@link System#nanoTime()} clock.
+ */
+public interface ExtendedPenInputManager extends PenInputManager {
+
+	/**
+	 * Get the pressure at a specific time, interpolated between the pen samples either side.
+	 * This makes it possible to find the pressure that applied when an input event occurred,
+	 * rather than whatever was most recently reported.
+	 * <p>
+	 * Short-horizon extrapolation is used if the time is after the most recent sample.
+	 * @param timestampNanos time from {@link System#nanoTime()}
+	 * @return the pressure, or 1.0 if no pressure information is available (as for {@link #getPressure()})
+	 */
+	double getPressure(long timestampNanos);
+
+	/**
+	 * Get the pressure at a specific time, with control over extrapolation.
+	 * @param timestampNanos time from {@link System#nanoTime()}
+	 * @param maxExtrapolationNanos maximum time to extrapolate beyond the most recent sample; use 0 to disable extrapolation
+	 * @return the pressure, or 1.0 if no pressure information is available (as for {@link #getPressure()})
+	 * @see #getPressure(long)
+	 */
+	double getPressure(long timestampNanos, long maxExtrapolationNanos);
+
+	/**
+	 * Get the current state of all pen axes in a single, consistent read.
+	 * This avoids separate calls for each axis (which might otherwise see different updates), and doesn't allocate
+	 * if a state object is provided.
+	 * @param state object to fill with the current state; if null, a new object is created
+	 * @return the filled state
+	 */
+	PenState getState(PenState state);
+
+	/**
+	 * Get a histogram of how regularly JPen delivers input, based upon the difference between
+	 * the interval between consecutive cycles and the requested sampling period.
+	 * @return
+	 */
+	JitterHistogram getCycleJitter();
+
+	/**
+	 * Add a listener to be notified when the pen kind changes, or a stylus or eraser enters or leaves proximity.
+	 * @param listener
+	 */
+	void addPenKindListener(PenKindListener listener);
+
+	/**
+	 * Remove a listener previously added with {@link #addPenKindListener(PenKindListener)}.
+	 * @param listener
+	 */
+	void removePenKindListener(PenKindListener listener);
+
+	/**
+	 * Query whether a stylus or eraser is currently in proximity of the tablet (as indicated by recent input).
+	 * @return
+	 * @see PenKindListener#penProximityChanged(boolean)
+	 */
+	boolean isInProximity();
+
+	/**
+	 * Get a publisher that delivers a {@link PenSample} for every JPen cycle in which input was received.
+	 * @return
+	 */
+	PenSamplePublisher getSamplePublisher();
+
+	/**
+	 * Get JavaFX properties reflecting the pen state, which are updated on the JavaFX thread at most once per pulse
+	 * while they have listeners.
+	 * @return
+	 */
+	PenStateProperties getProperties();
+
+	/**
+	 * Get the bindings from pen buttons and scroll controls to QuPath actions.
+	 * @return
+	 */
+	PenBindings getBindings();
+
+	/**
+	 * Set the bindings from pen buttons and scroll controls to QuPath actions. This can be called from any thread.
+	 * @param bindings the new bindings, or null to use {@link PenBindings#NONE}
+	 */
+	void setBindings(PenBindings bindings);
+
+	/**
+	 * Get the curve applied to raw pressure values by {@link #getPressure()} and related methods.
+	 * @return
+	 */
+	PressureCurve getPressureCurve();
+
+	/**
+	 * Set the curve applied to raw pressure values. This takes effect immediately, and can be called from any thread.
+	 * @param curve the new curve, or null to use {@link PressureCurve#LINEAR}
+	 */
+	void setPressureCurve(PressureCurve curve);
+
+	/**
+	 * Get the filter used to smooth raw pressure values as they are received.
+	 * @return
+	 */
+	PressureFilter getPressureFilter();
+
+	/**
+	 * Set the filter used to smooth raw pressure values. This can be called from any thread,
+	 * but the filter should not be shared with another pen manager because it holds state.
+	 * @param filter the new filter, or null to use {@link PressureFilter#none()}
+	 */
+	void setPressureFilter(PressureFilter filter);
+
+	/**
+	 * Get the buffer of recent pen samples (smoothed, but without the pressure curve applied).
+	 * @return
+	 */
+	PenSampleBuffer getSampleBuffer();
+
+	/**
+	 * Get the controller that adapts the JPen sampling frequency, e.g. to query its metrics.
+	 * @return
+	 */
+	SamplingRateController getSamplingRateController();
+
+	/**
+	 * Get the suspender that pauses JPen when it is idle, e.g. to query its metrics.
+	 * @return
+	 */
+	IdleSuspender getIdleSuspender();
+
+	/**
+	 * Get the current pen manager, if it implements this interface.
+	 * @return the extended pen manager, or null if JPen isn't active
+	 */
+	static ExtendedPenInputManager getInstance() {
+		var manager = QuPathPenManager.getPenManager();
+		return manager instanceof ExtendedPenInputManager ? (ExtendedPenInputManager)manager : null;
+	}
+
+}
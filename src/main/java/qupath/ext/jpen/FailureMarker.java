@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.gui.ExtensionClassLoader;
+
+/**
+ * On-disk record that JPen could not be set up in a particular environment.
+ * <p>
+ * On machines where JPen can never work (e.g. headless render nodes, or remote desktop sessions without tablet support)
+ * this allows later launches to skip native loading and provider probing entirely.
+ * The marker is ignored if the environment changes, once it has expired, or if {@link #RETRY} is set.
+ */
+final class FailureMarker {
+
+	private static final Logger logger = LoggerFactory.getLogger(FailureMarker.class);
+
+	/**
+	 * Set to {@code true} to ignore (and remove) any existing failure marker.
+	 */
+	static final String RETRY = JPenProperties.PREFIX + "retry";
+
+	/**
+	 * Time (in hours) for which a failure marker is respected. Use 0 to disable the marker entirely.
+	 */
+	static final String TTL_HOURS = JPenProperties.PREFIX + "failureTtlHours";
+
+	private static final long DEFAULT_TTL_HOURS = 24 * 7;
+
+	private static final String FILE_NAME = "failure.properties";
+
+	private static final String KEY_FINGERPRINT = "fingerprint";
+	private static final String KEY_TIMESTAMP = "timestamp";
+	private static final String KEY_CAUSE = "cause";
+
+	private final String cause;
+	private final Instant timestamp;
+
+	private FailureMarker(String cause, Instant timestamp) {
+		this.cause = cause;
+		this.timestamp = timestamp;
+	}
+
+	String getCause() {
+		return cause;
+	}
+
+	Instant getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Check for a valid failure marker that matches the current environment.
+	 * @return the marker if JPen setup should be skipped, or null otherwise
+	 */
+	static FailureMarker check() {
+		long ttlHours = JPenProperties.getLong(TTL_HOURS, DEFAULT_TTL_HOURS);
+		var path = getPath();
+		if (ttlHours <= 0 || JPenProperties.getBoolean(RETRY, false)) {
+			clear();
+			return null;
+		}
+		if (!Files.isRegularFile(path))
+			return null;
+		try {
+			var props = new Properties();
+			try (var stream = Files.newInputStream(path)) {
+				props.load(stream);
+			}
+			var fingerprint = createFingerprint();
+			if (!fingerprint.equals(props.getProperty(KEY_FINGERPRINT))) {
+				logger.debug("Environment has changed since JPen failure was recorded - will try again");
+				return null;
+			}
+			var timestamp = Instant.ofEpochMilli(Long.parseLong(props.getProperty(KEY_TIMESTAMP, "0")));
+			if (timestamp.plus(Duration.ofHours(ttlHours)).isBefore(Instant.now())) {
+				logger.debug("JPen failure marker has expired - will try again");
+				return null;
+			}
+			return new FailureMarker(props.getProperty(KEY_CAUSE, "Unknown"), timestamp);
+		} catch (Exception e) {
+			logger.debug("Unable to read JPen failure marker: {}", e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Record that JPen could not be set up in the current environment.
+	 * This should only be used for failures of the native library or providers, which are expected to recur
+	 * in the same environment - not for problems such as invalid options.
+	 * @param cause
+	 */
+	static void record(Throwable cause) {
+		var message = cause == null ? "Unknown" : cause.getClass().getSimpleName() + ": " + cause.getLocalizedMessage();
+		record(message);
+	}
+
+	/**
+	 * Record that JPen could not be set up in the current environment.
+	 * @param cause a description of the failure
+	 */
+	static void record(String cause) {
+		var path = getPath();
+		try {
+			var props = new Properties();
+			props.setProperty(KEY_FINGERPRINT, createFingerprint());
+			props.setProperty(KEY_TIMESTAMP, Long.toString(System.currentTimeMillis()));
+			props.setProperty(KEY_CAUSE, cause);
+			Files.createDirectories(path.getParent());
+			try (var stream = Files.newOutputStream(path)) {
+				props.store(stream, "JPen could not be set up in this environment - delete this file (or use -D" + RETRY + "=true) to try again");
+			}
+			logger.info("JPen setup failure recorded, will skip JPen on later launches (delete {} to retry)", path);
+		} catch (IOException e) {
+			logger.debug("Unable to write JPen failure marker: {}", e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Remove any failure marker, e.g. after JPen has been set up successfully.
+	 */
+	static void clear() {
+		try {
+			if (Files.deleteIfExists(getPath()))
+				logger.debug("JPen failure marker removed");
+		} catch (IOException e) {
+			logger.debug("Unable to remove JPen failure marker: {}", e.getLocalizedMessage());
+		}
+	}
+
+	static Path getPath() {
+		return NativeLibraryCache.getDefaultCacheDirectory().resolveSibling(FILE_NAME);
+	}
+
+	/**
+	 * Create a string summarizing the aspects of the environment that determine whether JPen can work.
+	 * @return
+	 */
+	static String createFingerprint() {
+		var sb = new StringBuilder();
+		sb.append("os=").append(NativeManifest.currentOS())
+			.append(";arch=").append(NativeManifest.currentArch())
+			.append(";headless=").append(GraphicsEnvironment.isHeadless())
+			.append(";display=").append(Objects.toString(System.getenv("DISPLAY"), ""))
+			.append(";wayland=").append(Objects.toString(System.getenv("WAYLAND_DISPLAY"), ""))
+			.append(";session=").append(Objects.toString(System.getenv("SESSIONNAME"), ""))
+			.append(";library=").append(getLibraryHash());
+		return sb.toString();
+	}
+
+	private static String getLibraryHash() {
+		try {
+			var manifest = NativeManifest.read(ExtensionClassLoader.getInstance());
+			var entry = manifest == null ? null : manifest.findForCurrentPlatform();
+			return entry == null ? "unknown" : entry.getSha256();
+		} catch (Exception e) {
+			return "unknown";
+		}
+	}
+
+}
@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pause JPen when the tablet isn't being used, so that its providers stop polling.
+ * <p>
+ * JPen is paused after a period without any pen input, or (optionally) when QuPath loses focus.
+ * While paused JPen reports nothing, so it is resumed by QuPath itself: when the application regains focus,
+ * or the mouse moves over the main window (which also happens when a stylus is brought into proximity).
+ * Resuming happens on the thread that reports the activity, before the event is handled further,
+ * so that pen input is available for the same event.
+ * <p>
+ * The number of JPen cycles per second is recorded while it is running, so that the effect of pausing can be measured.
+ */
+public final class IdleSuspender {
+
+	private static final Logger logger = LoggerFactory.getLogger(IdleSuspender.class);
+
+	/**
+	 * Time (in milliseconds) without pen input before JPen is paused. Use 0 to never pause when idle.
+	 */
+	static final String IDLE_MILLIS = JPenProperties.PREFIX + "idleSuspendMillis";
+
+	/**
+	 * Set to {@code false} to keep JPen running when QuPath loses focus.
+	 */
+	static final String SUSPEND_ON_FOCUS_LOSS = JPenProperties.PREFIX + "suspendOnFocusLoss";
+
+	private final Consumer<Boolean> pauser;
+	private final long idleNanos;
+	private final boolean suspendOnFocusLoss;
+
+	private volatile boolean suspended = false;
+	private volatile boolean focused = true;
+	private volatile long lastActivity = System.nanoTime();
+	private volatile long cycleCount = 0L;
+
+	// Only accessed while synchronized
+	private boolean checkScheduled = false;
+	private long runStartTime = System.nanoTime();
+	private long runStartCycles = 0L;
+	private double lastRunCyclesPerSecond = Double.NaN;
+	private int suspendCount = 0;
+	private long suspendedNanos = 0L;
+	private long suspendTime = 0L;
+
+	/**
+	 * Constructor.
+	 * @param pauser function to pause (true) or resume (false) JPen; this is called from a background thread
+	 */
+	IdleSuspender(Consumer<Boolean> pauser) {
+		this(pauser,
+				TimeUnit.MILLISECONDS.toNanos(JPenProperties.getLong(IDLE_MILLIS, 60_000)),
+				JPenProperties.getBoolean(SUSPEND_ON_FOCUS_LOSS, true));
+	}
+
+	IdleSuspender(Consumer<Boolean> pauser, long idleNanos, boolean suspendOnFocusLoss) {
+		this.pauser = pauser;
+		this.idleNanos = Math.max(0L, idleNanos);
+		this.suspendOnFocusLoss = suspendOnFocusLoss;
+		if (this.idleNanos > 0)
+			BackgroundTimer.execute(this::scheduleCheck);
+	}
+
+	/**
+	 * Notify that JPen has completed a cycle in which events were processed.
+	 * This is called from JPen's thread.
+	 * @param timestampNanos the time of the cycle, from {@link System#nanoTime()}
+	 */
+	void onCycle(long timestampNanos) {
+		lastActivity = timestampNanos;
+		cycleCount++;
+	}
+
+	/**
+	 * Notify of input through QuPath, e.g. the mouse moving over the window.
+	 * This is cheap if JPen is running, so can be called for every event.
+	 * If JPen is paused, it is resumed before this method returns.
+	 */
+	void wake() {
+		lastActivity = System.nanoTime();
+		if (suspended)
+			resume();
+	}
+
+	/**
+	 * Notify that QuPath has gained or lost focus.
+	 * This should only be called when the application as a whole loses focus, not when focus moves between its windows.
+	 * @param focused
+	 */
+	void setFocused(boolean focused) {
+		this.focused = focused;
+		if (focused)
+			wake();
+		else if (suspendOnFocusLoss)
+			BackgroundTimer.execute(this::suspendIfUnfocused);
+	}
+
+	private synchronized void suspendIfUnfocused() {
+		// Focus may have returned before this was called
+		if (!focused)
+			suspend("focus lost");
+	}
+
+	private synchronized void scheduleCheck() {
+		if (checkScheduled || suspended || idleNanos <= 0)
+			return;
+		long delay = Math.max(0L, lastActivity + idleNanos - System.nanoTime());
+		BackgroundTimer.schedule(this::checkIdle, delay);
+		checkScheduled = true;
+	}
+
+	private synchronized void checkIdle() {
+		checkScheduled = false;
+		if (suspended)
+			return;
+		if (System.nanoTime() - lastActivity >= idleNanos)
+			suspend("idle");
+		else
+			scheduleCheck();
+	}
+
+	private double computeRunCyclesPerSecond() {
+		long elapsed = System.nanoTime() - runStartTime;
+		return elapsed <= 0 ? Double.NaN : (cycleCount - runStartCycles) * 1e9 / elapsed;
+	}
+
+	private synchronized void suspend(String reason) {
+		if (suspended)
+			return;
+		try {
+			pauser.accept(Boolean.TRUE);
+		} catch (RuntimeException e) {
+			logger.warn("Unable to pause JPen: {}", e.getLocalizedMessage());
+			return;
+		}
+		suspended = true;
+		suspendCount++;
+		suspendTime = System.nanoTime();
+		lastRunCyclesPerSecond = computeRunCyclesPerSecond();
+		logger.debug("JPen paused ({}) - {} cycles/s while running", reason, String.format("%.1f", lastRunCyclesPerSecond));
+	}
+
+	private synchronized void resume() {
+		if (!suspended)
+			return;
+		try {
+			pauser.accept(Boolean.FALSE);
+		} catch (RuntimeException e) {
+			logger.warn("Unable to resume JPen: {}", e.getLocalizedMessage());
+			return;
+		}
+		suspended = false;
+		long now = System.nanoTime();
+		suspendedNanos += now - suspendTime;
+		runStartTime = now;
+		runStartCycles = cycleCount;
+		logger.debug("JPen resumed");
+		scheduleCheck();
+	}
+
+	/**
+	 * Query whether JPen is currently paused by this suspender.
+	 * @return
+	 */
+	public boolean isSuspended() {
+		return suspended;
+	}
+
+	/**
+	 * Get the total number of JPen cycles in which events were processed.
+	 * @return
+	 */
+	public long getCycleCount() {
+		return cycleCount;
+	}
+
+	/**
+	 * Get the average number of JPen cycles per second since it was last resumed or, if it is currently paused,
+	 * during the period before it was paused. While paused, there are no cycles at all.
+	 * @return cycles per second, or NaN if not yet measured
+	 */
+	public synchronized double getCyclesPerSecond() {
+		return suspended ? lastRunCyclesPerSecond : computeRunCyclesPerSecond();
+	}
+
+	/**
+	 * Get the number of times JPen has been paused.
+	 * @return
+	 */
+	public synchronized int getSuspendCount() {
+		return suspendCount;
+	}
+
+	/**
+	 * Get the total time for which JPen has been paused, including the current pause.
+	 * @return
+	 */
+	public synchronized Duration getSuspendedTime() {
+		return Duration.ofNanos(suspendedNanos + (suspended ? System.nanoTime() - suspendTime : 0L));
+	}
+
+	@Override
+	public String toString() {
+		return "IdleSuspender[suspended=" + isSuspended() + ", cycles=" + getCycleCount() + ", suspends=" + getSuspendCount() + "]";
+	}
+
+}
@@ -25,47 +25,36 @@ package qupath.ext.jpen;
 
 import java.awt.Point;
 import java.awt.geom.Point2D.Float;
-import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
-import java.util.function.BiPredicate;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jpen.PButtonEvent;
-import jpen.PKindEvent;
-import jpen.PLevelEvent;
-import jpen.PScrollEvent;
-import jpen.PenDevice;
+import javafx.application.Platform;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.scene.input.MouseEvent;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
 import jpen.PenEvent;
 import jpen.PenManager;
-import jpen.PenProvider;
 import jpen.PenProvider.Constructor;
-import jpen.event.PenListener;
-import jpen.event.PenManagerListener;
 import jpen.owner.PenClip;
 import jpen.owner.PenOwner;
-import jpen.provider.NativeLibraryLoader;
-import jpen.provider.osx.CocoaProvider;
-import jpen.provider.wintab.WintabProvider;
-import jpen.provider.xinput.XinputProvider;
-import qupath.lib.common.GeneralTools;
+import qupath.ext.jpen.JPenStartupMetrics.Phase;
+import qupath.ext.jpen.JPenStartupMetrics.PhaseTimer;
 import qupath.lib.common.Version;
-import qupath.lib.gui.ExtensionClassLoader;
 import qupath.lib.gui.QuPathGUI;
 import qupath.lib.gui.extensions.GitHubProject;
 import qupath.lib.gui.extensions.QuPathExtension;
+import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.gui.viewer.tools.QuPathPenManager;
-import qupath.lib.gui.viewer.tools.QuPathPenManager.PenInputManager;
+import qupath.lib.gui.viewer.tools.PathTool;
+import qupath.lib.gui.viewer.tools.PathTools;
 
 /**
  * QuPath extension to make the Brush tool pressure-sensitive when used with a graphics tablet,
@@ -79,17 +68,16 @@ public class JPenExtension implements QuPathExtension, GitHubProject {
 	private static final Logger logger = LoggerFactory.getLogger(JPenExtension.class);
 	
 	private static boolean alreadyInstalled = false;
+	
+	private static StringProperty pressureCurveProperty;
+	private static StringProperty pressureFilterProperty;
+	private static StringProperty bindingsProperty;
 
 	static {
-		try {
-			boolean nativeLibraryLoaded = loadNativeLibrary();
-			if (nativeLibraryLoaded)
-				logger.info("Native library loaded");
-			else
-				logger.info("Unable to preload JPen native library (I couldn't find it)");
-		} catch (Throwable t) {
-			logger.warn("Unable to preload JPen native library: " + t.getLocalizedMessage(), t);
-		}
+		// Start loading as early as possible - the result is shared with installExtension.
+		// When bootstrapping asynchronously, we leave this to the background thread instead.
+		if (!JPenProperties.isAsyncBootstrap() && FailureMarker.check() == null)
+			JPenNativeLoader.load();
 	}
 
 
@@ -97,148 +85,260 @@ public class JPenExtension implements QuPathExtension, GitHubProject {
 	public synchronized void installExtension(QuPathGUI qupath) {
 		if (alreadyInstalled)
 			return;
-		try {
-			loadNativeLibrary();
-		} catch (Throwable t) {
-			logger.warn("Unable to preload JPen native library: " + t.getLocalizedMessage(), t);
+		if (JPenProperties.isAsyncBootstrap()) {
+			// Avoid holding up QuPath startup with native loading & provider initialization - 
+			// QuPath's default pen manager is used until we are ready.
+			// The outcome isn't known yet, so don't start another attempt if this is called again.
+			alreadyInstalled = true;
+			var thread = new Thread(() -> bootstrap(qupath), "jpen-bootstrap");
+			thread.setDaemon(true);
+			thread.start();
+		} else
+			alreadyInstalled = bootstrap(qupath);
+	}
+	
+	/**
+	 * Load the native library, create the PenManager and register it with QuPath.
+	 * This may be called from a background thread; registration itself happens on the JavaFX thread.
+	 * @param qupath the QuPath instance, used to track the selected tool (may be null)
+	 * @return true if the pen manager was created, false otherwise
+	 */
+	private static boolean bootstrap(QuPathGUI qupath) {
+		var marker = FailureMarker.check();
+		if (marker != null) {
+			logger.info("Skipping JPen setup because it failed previously in this environment ({}) - use -D{}=true to try again",
+					marker.getCause(), FailureMarker.RETRY);
+			return false;
 		}
+		var result = JPenNativeLoader.load();
 		try {
-			PenManager pm = new PenManager(new PenOwnerFX());
+			var owner = new PenOwnerFX();
+			var providersTimer = JPenStartupMetrics.start(Phase.PROVIDERS);
+			var firstDeviceTimer = JPenStartupMetrics.start(Phase.FIRST_DEVICE);
+			PenManager pm;
+			try (var timer = JPenStartupMetrics.start(Phase.PEN_MANAGER)) {
+				pm = new PenManager(owner);
+			} catch (Throwable t) {
+				// This depends upon the native library & providers, so is likely to fail again next time
+				logger.warn("Unable to create JPen pen manager: " + t.getLocalizedMessage(), t);
+				FailureMarker.record(t);
+				return false;
+			}
 			pm.pen.setFirePenTockOnSwing(false);
-			int defaultFrequency = 40;
-			pm.pen.setFrequencyLater(defaultFrequency);
-			PenInputManager manager = new JPenInputManager(pm);
-			QuPathPenManager.setPenManager(manager);
-			alreadyInstalled = true;
+			var manager = new JPenInputManager(pm, firstDeviceTimer);
+			if (Platform.isFxApplicationThread())
+				register(qupath, manager);
+			else
+				Platform.runLater(() -> register(qupath, manager));
+			logger.debug("JPen pen manager ready");
+			
+			// JPen constructs providers on its own thread - check the outcome without blocking here
+			var thread = new Thread(() -> {
+				checkProviders(pm, owner, result, providersTimer);
+				// Devices may have been added before our listener was registered - 
+				// if so, this gives an upper bound for the time to detect the first device
+				if (pm.getDevices().stream().anyMatch(d -> owner.isOwnConstructor(d.getProvider().getConstructor())))
+					firstDeviceTimer.close();
+				JPenStartupMetrics.logSummary();
+			}, "jpen-provider-check");
+			thread.setDaemon(true);
+			thread.start();
+			return true;
 		} catch (Throwable t) {
+			// Not recorded as an environment failure - this may be caused by something that is easily fixed, e.g. invalid options
 			logger.warn("Unable to add JPen support: " + t.getLocalizedMessage(), t);
+			return false;
 		}
 	}
 	
+	/**
+	 * Register the pen manager with QuPath, track whether the selected tool is pressure-aware,
+	 * and use the main window to decide when JPen can be paused.
+	 * This should be called on the JavaFX thread.
+	 */
+	private static void register(QuPathGUI qupath, JPenInputManager manager) {
+		QuPathPenManager.setPenManager(manager);
+		if (qupath == null)
+			return;
+		var curveProperty = pressureCurveProperty();
+		applyPressureCurve(manager, curveProperty.get());
+		curveProperty.addListener((v, o, n) -> applyPressureCurve(manager, n));
+		var filterProperty = pressureFilterProperty();
+		applyPressureFilter(manager, filterProperty.get());
+		filterProperty.addListener((v, o, n) -> applyPressureFilter(manager, n));
+		
+		manager.setActionDispatcher(new PenActionDispatcher(qupath));
+		var bindings = bindingsProperty();
+		applyBindings(manager, bindings.get());
+		bindings.addListener((v, o, n) -> applyBindings(manager, n));
+		
+		var toolProperty = qupath.getToolManager().selectedToolProperty();
+		var controller = manager.getSamplingRateController();
+		controller.setPressureAwareTool(isPressureAware(toolProperty.getValue()));
+		toolProperty.addListener((v, o, n) -> controller.setPressureAwareTool(isPressureAware(n)));
+		
+		var stage = qupath.getStage();
+		if (stage != null) {
+			var suspender = manager.getIdleSuspender();
+			trackApplicationFocus(suspender::setFocused);
+			stage.addEventFilter(MouseEvent.MOUSE_MOVED, e -> suspender.wake());
+			stage.addEventFilter(MouseEvent.MOUSE_ENTERED_TARGET, e -> suspender.wake());
+			stage.addEventFilter(MouseEvent.MOUSE_PRESSED, e -> suspender.wake());
+			// The main window is only hidden when QuPath quits - let pen sample subscribers finish cleanly
+			stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> manager.getSamplePublisher().close());
+		}
+	}
 	
-	@Override
-	public Version getQuPathVersion() {
-		return Version.parse("0.3.0-rc2");
+	/**
+	 * Persistent preference storing the specification of the pressure curve, as used by {@link PressureCurve#parse(String)}.
+	 * Changes are applied to the pen manager immediately.
+	 * This should only be accessed from the JavaFX thread.
+	 * @return
+	 */
+	public static synchronized StringProperty pressureCurveProperty() {
+		if (pressureCurveProperty == null)
+			pressureCurveProperty = PathPrefs.createPersistentPreference("jpen.pressureCurve", PressureCurve.LINEAR.toString());
+		return pressureCurveProperty;
 	}
 	
-	@Override
-	public GitHubRepo getRepository() {
-		return GitHubRepo.create(getName(), "qupath", "qupath-extension-jpen");
+	private static void applyPressureCurve(ExtendedPenInputManager manager, String spec) {
+		try {
+			manager.setPressureCurve(PressureCurve.parse(spec));
+		} catch (IllegalArgumentException e) {
+			logger.warn("Invalid pressure curve '{}' - pressure will not be adjusted ({})", spec, e.getLocalizedMessage());
+			manager.setPressureCurve(PressureCurve.LINEAR);
+		}
 	}
-
-
+	
 	/**
-	 * Try to load native library from the extension jar.
-	 * @throws URISyntaxException
-	 * @throws IOException
-	 * @throws SecurityException
-	 * @throws NoSuchFieldException
-	 * @throws IllegalAccessException
-	 * @throws IllegalArgumentException
+	 * Persistent preference storing the specification of the pressure smoothing filter, as used by {@link PressureFilter#parse(String)}.
+	 * Changes are applied to the pen manager immediately.
+	 * This should only be accessed from the JavaFX thread.
+	 * @return
 	 */
-	private static boolean loadNativeLibrary() throws URISyntaxException, IOException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
-		URL url = ExtensionClassLoader.getInstance().getResource("natives");
-		logger.debug("JPen url: {}", url);
-		if (url == null)
-			throw new IOException("Unable to find JPen");
-		URI uri = url.toURI();
-		Path path;
-		if (uri.getScheme().equals("jar")) {
-			try (var fs = FileSystems.newFileSystem(uri, Map.of(), ExtensionClassLoader.getInstance())) {
-				var pathRoot = fs.getPath("natives");
-				path = extractLib(pathRoot);
-			}
-		} else {
-			try (var stream = Files.find(Paths.get(uri), 1, createMatcher())) {
-				path = stream.findFirst().orElse(null);
-			}
-		}
-		if (path == null)
-			throw new IOException("Unable to extract JPen natives");
-		if (Files.isRegularFile(path)) {
-			logger.trace("Loading {}", path);
-			System.load(path.toAbsolutePath().toString());
-			
-			// Try to update for the providers we use
-			logger.trace("Updating cocoa");
-			setLoaded(CocoaProvider.class);
-			logger.trace("Updating xinput");
-			setLoaded(XinputProvider.class);
-			logger.trace("Updating wintab");
-			setLoaded(WintabProvider.class);
-
-			return true;
-		} else {
-			logger.debug("Path is not a regular file: {}", path);
-			return false;
+	public static synchronized StringProperty pressureFilterProperty() {
+		if (pressureFilterProperty == null)
+			pressureFilterProperty = PathPrefs.createPersistentPreference("jpen.pressureFilter", PressureFilter.none().toString());
+		return pressureFilterProperty;
+	}
+	
+	private static void applyPressureFilter(ExtendedPenInputManager manager, String spec) {
+		try {
+			manager.setPressureFilter(PressureFilter.parse(spec));
+		} catch (IllegalArgumentException e) {
+			logger.warn("Invalid pressure filter '{}' - pressure will not be smoothed ({})", spec, e.getLocalizedMessage());
+			manager.setPressureFilter(PressureFilter.none());
 		}
 	}
 	
 	/**
-	 * In order to avoid forking JPen and support loading a native library from a jar, 
-	 * we need to override the behavior of NativeLibraryLoader (which uses System.loadLibrary).
-	 * If we have successfully loaded a library, we need to toggle the 'loaded' flag by reflection.
-	 * 
-	 * @param cls
-	 * @throws NoSuchFieldException
-	 * @throws SecurityException
-	 * @throws IllegalArgumentException
-	 * @throws IllegalAccessException
+	 * Persistent preference storing the bindings from pen buttons and scroll controls to QuPath actions,
+	 * as used by {@link PenBindings#parse(String)}. Changes are applied to the pen manager immediately.
+	 * This should only be accessed from the JavaFX thread.
+	 * @return
 	 */
-	static void setLoaded(Class<?> cls) throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
-		var field = NativeLibraryLoader.class.getDeclaredField("loaded");
-		field.setAccessible(true);
-
-		var loader = cls.getDeclaredField("LIB_LOADER");
-		loader.setAccessible(true);
-		var obj = loader.get(cls);
-
-		field.setBoolean(obj, true);
+	public static synchronized StringProperty bindingsProperty() {
+		if (bindingsProperty == null)
+			bindingsProperty = PathPrefs.createPersistentPreference("jpen.bindings", PenBindings.NONE.toString());
+		return bindingsProperty;
+	}
+	
+	private static void applyBindings(ExtendedPenInputManager manager, String spec) {
+		try {
+			manager.setBindings(PenBindings.parse(spec));
+		} catch (IllegalArgumentException e) {
+			logger.warn("Invalid pen bindings '{}' - pen buttons will not be bound ({})", spec, e.getLocalizedMessage());
+			manager.setBindings(PenBindings.NONE);
+		}
 	}
 	
 	/**
-	 * Extract native library to a temp file.
-	 * @param pathRoot The file or folder to extract
-	 * @return Path to the extracted file
+	 * Notify a consumer when QuPath as a whole gains or loses focus, ignoring focus moving between QuPath's own windows
+	 * (e.g. when a dialog is opened or closed).
+	 * This must be called from the JavaFX thread.
+	 * @param consumer
 	 */
-	private static Path extractLib(Path pathRoot) throws IOException {
-		var path = Files.find(pathRoot, 1, createMatcher()).findFirst().orElse(null);
-		if (path == null)
-			return null;
-		logger.debug("JPen path to extract: {}", path);
-		Path tempDir = Files.createTempDirectory("qupath-");
-		Path tempFile = tempDir.resolve(pathRoot.relativize(path).toString());
-		logger.trace("Requesting delete on exit");
-		tempDir.toFile().deleteOnExit();
-		tempFile.toFile().deleteOnExit();
-		logger.debug("Copying {} to {}", path, tempFile);
-		Files.copy(path, tempFile);
-		logger.debug("Copy completed, new file size {}", tempFile.toFile().length());
-		return tempFile;
+	private static void trackApplicationFocus(Consumer<Boolean> consumer) {
+		ChangeListener<Boolean> focusListener = (v, o, n) -> {
+			if (n) {
+				consumer.accept(Boolean.TRUE);
+			} else {
+				// Focus may be moving to another QuPath window, so check once the change is complete
+				Platform.runLater(() -> {
+					if (Window.getWindows().stream().noneMatch(Window::isFocused))
+						consumer.accept(Boolean.FALSE);
+				});
+			}
+		};
+		var windows = Window.getWindows();
+		for (var window : windows)
+			window.focusedProperty().addListener(focusListener);
+		windows.addListener((ListChangeListener<Window>)c -> {
+			while (c.next()) {
+				// Windows are added again each time they are shown, so avoid adding the listener twice
+				for (var window : c.getAddedSubList()) {
+					window.focusedProperty().removeListener(focusListener);
+					window.focusedProperty().addListener(focusListener);
+				}
+			}
+		});
 	}
-
-	private static BiPredicate<Path, BasicFileAttributes> createMatcher() {
-		if (GeneralTools.isMac())
-			return (p, a) -> matchLib(p, a, ".jnilib", ".dylib");
-		if (GeneralTools.isWindows())
-			return (p, a) -> matchLib(p, a, "64.dll");
-		if (GeneralTools.isLinux())
-			return (p, a) -> matchLib(p, a, "64.so");
-		return (p, a) -> false;
+	
+	/**
+	 * Query whether a tool makes use of pen pressure, and so benefits from a higher sampling frequency.
+	 * @param tool
+	 * @return
+	 */
+	private static boolean isPressureAware(PathTool tool) {
+		return tool == PathTools.BRUSH || tool == PathTools.WAND;
 	}
-
-	private static boolean matchLib(Path path, BasicFileAttributes attr, String... exts) {
-		if (attr.isDirectory())
-			return false;
-		var name = path.getFileName().toString().toLowerCase();
-		logger.trace("Checking name: {} against {}", name, Arrays.asList(exts));
-		if (!name.startsWith("jpen") && !name.startsWith("libjpen"))
-			return false;
-		for (var ext : exts) {
-			if (name.endsWith(ext))
-				return true;
+	
+	/**
+	 * Wait for JPen to construct its providers, and record a failure if none of them could be constructed.
+	 * This means we can avoid repeating the work on later launches in the same environment.
+	 * <p>
+	 * A provider that only timed out isn't recorded as a failure, since it may just have been slow (e.g. over a remote X connection)
+	 * and could work on the next launch.
+	 */
+	private static void checkProviders(PenManager pm, PenOwnerFX owner, NativeLoadResult result, PhaseTimer timer) {
+		// This blocks until the providers have been constructed
+		pm.getProviderConstructors();
+		timer.close();
+		Throwable cause = result.getFailure();
+		boolean onlyTimeouts = cause == null && !owner.constructors.isEmpty();
+		for (var constructor : owner.constructors) {
+			if (constructor.getConstructed() != null) {
+				logger.debug("JPen provider available: {}", constructor.getName());
+				PenProviderType.rememberWorking(PenProviderType.fromConstructor(constructor.getDelegate()));
+				FailureMarker.clear();
+				return;
+			}
+			if (constructor.isAbandoned())
+				continue;
+			onlyTimeouts = false;
+			if (cause == null && constructor.getConstructionException() != null)
+				cause = constructor.getConstructionException();
 		}
-		return false;
+		if (onlyTimeouts) {
+			logger.warn("JPen providers timed out - graphics tablet input will not be available, but will be tried again on the next launch");
+			return;
+		}
+		logger.warn("No JPen provider could be constructed - graphics tablet input will not be available");
+		if (cause == null)
+			FailureMarker.record("No JPen provider could be constructed");
+		else
+			FailureMarker.record(cause);
+	}
+	
+	
+	@Override
+	public Version getQuPathVersion() {
+		return Version.parse("0.3.0-rc2");
+	}
+	
+	@Override
+	public GitHubRepo getRepository() {
+		return GitHubRepo.create(getName(), "qupath", "qupath-extension-jpen");
 	}
 
 
@@ -254,82 +354,6 @@ public class JPenExtension implements QuPathExtension, GitHubProject {
 	
 	
 	
-	private static class JPenInputManager implements PenInputManager, PenListener, PenManagerListener {
-		
-		private PenManager pm;
-		private long lastEventTime = 0L;
-		
-		JPenInputManager(PenManager pm) {
-			this.pm = pm;
-			this.pm.addListener(this);
-			this.pm.pen.addListener(this);
-		}
-		
-		boolean isRecent() {
-			if (lastEventTime == 0L)
-				return false;
-			long timeDifference = System.currentTimeMillis() - lastEventTime;
-			return timeDifference <= pm.pen.getFrequency();
-		}
-
-		@Override
-		public boolean isEraser() {
-			if (pm != null && !pm.getPaused() && isRecent() && pm.pen.getKind().getType() == jpen.PKind.Type.ERASER)
-				return true;
-			return false;
-		}
-
-		@Override
-		public double getPressure() {
-			if (pm != null && !pm.getPaused() && isRecent()) {
-				switch (pm.pen.getKind().getType()) {
-				case ERASER:
-				case STYLUS:
-					double pressure = pm.pen.getLevelValue(jpen.PLevel.Type.PRESSURE);
-					return pressure;
-				case CURSOR:
-				case CUSTOM:
-				case IGNORE:
-				default:
-					break;
-				}
-			}
-			return 1.0;
-		}
-
-		@Override
-		public void penKindEvent(PKindEvent ev) {}
-
-		@Override
-		public void penLevelEvent(PLevelEvent ev) {
-			lastEventTime = ev.getTime();
-		}
-
-		@Override
-		public void penButtonEvent(PButtonEvent ev) {}
-
-		@Override
-		public void penScrollEvent(PScrollEvent ev) {}
-
-		@Override
-		public void penTock(long availableMillis) {
-			// Log that a pen event has been noted (can be fired when pen is hovering above the device)
-			lastEventTime = System.currentTimeMillis();
-		}
-
-		@Override
-		public void penDeviceAdded(Constructor providerConstructor, PenDevice penDevice) {
-			logger.debug("PenDevice added: {} ({})", penDevice, providerConstructor);
-		}
-
-		@Override
-		public void penDeviceRemoved(Constructor providerConstructor, PenDevice penDevice) {
-			logger.debug("PenDevice removed: {} ({})", penDevice, providerConstructor);
-		}
-		
-	}
-	
-	
 	/** 
 	 * PenOwner implementation for JavaFX.
 	 * <p>
@@ -338,9 +362,9 @@ public class JPenExtension implements QuPathExtension, GitHubProject {
 	 * @author Pete Bankhead
 	 *
 	 */
-	private static class PenOwnerFX implements PenOwner {
+	static class PenOwnerFX implements PenOwner {
 		
-		private PenManagerHandle penManagerHandle;
+		private volatile PenManagerHandle penManagerHandle;
 		private PenClip penClip = new QuPathViewerPenClip();
 
 		@Override
@@ -348,16 +372,34 @@ public class JPenExtension implements QuPathExtension, GitHubProject {
 			return penClip;
 		}
 
+		// Note: SystemProvider does not work because it needs a java.awt.Component to register the MouseListener
+		private final List<TimeBoundedConstructor> constructors = PenProviderType.getCandidates().stream()
+				.map(type -> new TimeBoundedConstructor(type.createConstructor()))
+				.toList();
+
 		@Override
 		public Collection<Constructor> getPenProviderConstructors() {
-			return Arrays.asList(
-					 new PenProvider.Constructor[]{
-						 // new SystemProvider.Constructor(), //Does not work because it needs a java.awt.Component to register the MouseListener
-						 new XinputProvider.Constructor(),
-						 new WintabProvider.Constructor(),
-						 new CocoaProvider.Constructor()
-					 }
-				 );
+			// JPen calls this when it is ready to construct the providers - 
+			// start them all now, so that they are constructed in parallel
+			if (penManagerHandle != null) {
+				var pm = penManagerHandle.getPenManager();
+				for (var constructor : constructors)
+					constructor.start(pm);
+			}
+			return Collections.unmodifiableList(constructors);
+		}
+		
+		/**
+		 * Query whether a provider constructor belongs to this owner, as opposed to being JPen's emulation provider.
+		 * @param constructor either the time-bounded constructor, or the one it wraps
+		 * @return
+		 */
+		boolean isOwnConstructor(Constructor constructor) {
+			for (var c : constructors) {
+				if (c == constructor || c.getDelegate() == constructor)
+					return true;
+			}
+			return false;
 		}
 
 		@Override
@@ -377,6 +419,15 @@ public class JPenExtension implements QuPathExtension, GitHubProject {
 			return false;
 		}
 
+		/**
+		 * Pause or resume JPen, e.g. while the tablet isn't being used.
+		 * @param paused
+		 */
+		void setPaused(boolean paused) {
+			if (penManagerHandle != null)
+				penManagerHandle.setPenManagerPaused(paused);
+		}
+
 		@Override
 		public void setPenManagerHandle(PenManagerHandle handle) {
 			this.penManagerHandle = handle;
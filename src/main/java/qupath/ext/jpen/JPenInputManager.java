@@ -0,0 +1,410 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jpen.PButtonEvent;
+import jpen.PKindEvent;
+import jpen.PLevelEvent;
+import jpen.PScrollEvent;
+import jpen.PenDevice;
+import jpen.PenManager;
+import jpen.PenProvider.Constructor;
+import jpen.event.PenListener;
+import jpen.event.PenManagerListener;
+import qupath.ext.jpen.JPenExtension.PenOwnerFX;
+import qupath.ext.jpen.JPenStartupMetrics.PhaseTimer;
+
+/**
+ * {@link ExtendedPenInputManager} implementation using JPen.
+ * <p>
+ * JPen events are received on JPen's own thread, which is the only thread that updates the pen state.
+ * Changes are gathered throughout each JPen cycle and committed together at the end of the cycle (in {@link #penTock(long)}).
+ * Each commit is published as a {@link PenStateSnapshot}, so that {@link #getPressure()}, {@link #isEraser()} and {@link #getState(PenState)}
+ * can be called from the JavaFX thread without reading JPen's state while it is being modified.
+ * Every commit with level changes is also recorded in a {@link PenSampleBuffer}, so that intermediate samples aren't lost.
+ * Pressure is smoothed by the current {@link PressureFilter} when it is committed, before being recorded;
+ * the {@link PressureCurve} is applied when pressure is requested.
+ * Changes in pen kind and proximity are detected at each commit and pushed to any {@link PenKindListener}s,
+ * so that tools don't need to poll {@link #isEraser()}.
+ * <p>
+ * All timestamps use {@link System#nanoTime()}. Input is considered 'recent' for a window learned from the
+ * observed interval between JPen cycles (see {@link StalenessEstimator}).
+ */
+class JPenInputManager implements ExtendedPenInputManager, PenListener, PenManagerListener {
+	
+	private static final Logger logger = LoggerFactory.getLogger(JPenInputManager.class);
+	
+	
+	/**
+	 * Number of recent samples to retain.
+	 */
+	static final String SAMPLE_BUFFER_SIZE = JPenProperties.PREFIX + "sampleBufferSize";
+	
+	private static final int DEFAULT_SAMPLE_BUFFER_SIZE = 1024;
+	
+	private static final int MAX_SAMPLE_BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Default maximum time to extrapolate pressure beyond the most recent sample.
+	 */
+	private static final long DEFAULT_MAX_EXTRAPOLATION_NANOS = 10_000_000L;
+	
+	private final PenManager pm;
+	private final PhaseTimer firstDeviceTimer;
+	
+	private final PenStateSnapshot snapshot = new PenStateSnapshot();
+	private final ThreadLocal<PenState> readerSamples = ThreadLocal.withInitial(PenState::new);
+	private final PenSampleBuffer sampleBuffer = new PenSampleBuffer(
+			(int)JPenProperties.getLong(SAMPLE_BUFFER_SIZE, DEFAULT_SAMPLE_BUFFER_SIZE, 1, MAX_SAMPLE_BUFFER_SIZE));
+	private final StalenessEstimator staleness;
+	private final SamplingRateController rateController;
+	private final IdleSuspender idleSuspender;
+	// Created when first requested, since most uses don't need them
+	private volatile PenStateProperties properties;
+	private final JitterHistogram cycleJitter = new JitterHistogram();
+	private final PenSamplePublisher publisher = new PenSamplePublisher();
+	private final PenKindTracker kindTracker;
+	
+	private volatile PressureCurve pressureCurve = PressureCurve.LINEAR;
+	private volatile PressureFilter pressureFilter = PressureFilter.none();
+	private volatile PenBindings bindings = PenBindings.NONE;
+	private volatile PenActionDispatcher actionDispatcher;
+	
+	// Current state - only accessed from JPen's event thread
+	private final PenState current = new PenState();
+	private float rawPressure = 0f;
+	private boolean pressureChanged = false;
+	private boolean levelsChanged = false;
+	private long lastCommit = 0L;
+	
+	JPenInputManager(PenManager pm, PhaseTimer firstDeviceTimer) {
+		this.pm = pm;
+		this.firstDeviceTimer = firstDeviceTimer;
+		this.rateController = new SamplingRateController(pm.pen);
+		this.staleness = new StalenessEstimator(rateController.getCurrentFrequency());
+		if (pm.penOwner instanceof PenOwnerFX owner)
+			this.idleSuspender = new IdleSuspender(owner::setPaused);
+		else
+			this.idleSuspender = new IdleSuspender(paused -> {}, 0L, false);
+		var currentKind = pm.pen.getKind();
+		if (currentKind != null)
+			current.kind = currentKind.getType().ordinal();
+		this.kindTracker = new PenKindTracker(staleness, current.kind);
+		this.pm.addListener(this);
+		this.pm.pen.addListener(this);
+	}
+	
+	@Override
+	public PenSampleBuffer getSampleBuffer() {
+		return sampleBuffer;
+	}
+	
+	@Override
+	public SamplingRateController getSamplingRateController() {
+		return rateController;
+	}
+	
+	@Override
+	public IdleSuspender getIdleSuspender() {
+		return idleSuspender;
+	}
+	
+	@Override
+	public JitterHistogram getCycleJitter() {
+		return cycleJitter;
+	}
+	
+	@Override
+	public void addPenKindListener(PenKindListener listener) {
+		kindTracker.addListener(listener);
+	}
+	
+	@Override
+	public void removePenKindListener(PenKindListener listener) {
+		kindTracker.removeListener(listener);
+	}
+	
+	@Override
+	public boolean isInProximity() {
+		return kindTracker.isInProximity();
+	}
+	
+	@Override
+	public PenSamplePublisher getSamplePublisher() {
+		return publisher;
+	}
+	
+	@Override
+	public PenStateProperties getProperties() {
+		var props = properties;
+		if (props == null) {
+			synchronized (this) {
+				props = properties;
+				if (props == null) {
+					props = new PenStateProperties(this);
+					properties = props;
+				}
+			}
+		}
+		return props;
+	}
+	
+	@Override
+	public PenBindings getBindings() {
+		return bindings;
+	}
+	
+	@Override
+	public void setBindings(PenBindings bindings) {
+		this.bindings = bindings == null ? PenBindings.NONE : bindings;
+	}
+	
+	/**
+	 * Set the dispatcher used to perform the actions bound to pen buttons and scroll controls.
+	 * @param dispatcher the dispatcher, or null if actions should not be performed
+	 */
+	void setActionDispatcher(PenActionDispatcher dispatcher) {
+		this.actionDispatcher = dispatcher;
+	}
+	
+	@Override
+	public PressureCurve getPressureCurve() {
+		return pressureCurve;
+	}
+	
+	@Override
+	public void setPressureCurve(PressureCurve curve) {
+		this.pressureCurve = curve == null ? PressureCurve.LINEAR : curve;
+	}
+	
+	@Override
+	public PressureFilter getPressureFilter() {
+		return pressureFilter;
+	}
+	
+	@Override
+	public void setPressureFilter(PressureFilter filter) {
+		this.pressureFilter = filter == null ? PressureFilter.none() : filter;
+	}
+	
+	private PenState readSample() {
+		return snapshot.read(readerSamples.get());
+	}
+	
+	private boolean isRecent(long timestamp) {
+		return staleness.isRecent(timestamp, System.nanoTime());
+	}
+	
+	/**
+	 * Get the time for which input is currently considered recent, learned from the observed sampling interval.
+	 * @return the staleness window in nanoseconds
+	 */
+	long getStalenessWindowNanos() {
+		return staleness.getWindowNanos();
+	}
+
+	@Override
+	public boolean isEraser() {
+		if (pm.getPaused())
+			return false;
+		// Answered from the kind tracker, so this doesn't need to read the snapshot
+		return kindTracker.isEraser();
+	}
+
+	@Override
+	public double getPressure() {
+		if (pm.getPaused())
+			return 1.0;
+		var sample = readSample();
+		if (!isRecent(sample.timestamp))
+			return 1.0;
+		if (sample.isStylusOrEraser())
+			return pressureCurve.apply(sample.pressure);
+		return 1.0;
+	}
+	
+	@Override
+	public double getPressure(long timestampNanos) {
+		return getPressure(timestampNanos, DEFAULT_MAX_EXTRAPOLATION_NANOS);
+	}
+	
+	@Override
+	public double getPressure(long timestampNanos, long maxExtrapolationNanos) {
+		if (pm.getPaused())
+			return 1.0;
+		var sample = readSample();
+		if (!isRecent(sample.timestamp))
+			return 1.0;
+		if (sample.isStylusOrEraser())
+			return pressureCurve.apply(sampleBuffer.getPressureAt(timestampNanos, maxExtrapolationNanos, sample.pressure));
+		return 1.0;
+	}
+	
+	@Override
+	public PenState getState(PenState state) {
+		if (state == null)
+			state = new PenState();
+		snapshot.read(state);
+		state.recent = !pm.getPaused() && isRecent(state.timestamp);
+		state.pressure = pressureCurve.apply(state.pressure);
+		return state;
+	}
+	
+	private void publish() {
+		snapshot.publish(current);
+	}
+
+	@Override
+	public void penKindEvent(PKindEvent ev) {
+		current.kind = ev.kind.getType().ordinal();
+		pressureFilter.reset();
+	}
+
+	@Override
+	public void penLevelEvent(PLevelEvent ev) {
+		for (var level : ev.levels) {
+			switch (level.getType()) {
+			case X:
+				current.x = level.value;
+				break;
+			case Y:
+				current.y = level.value;
+				break;
+			case PRESSURE:
+				rawPressure = level.value;
+				pressureChanged = true;
+				break;
+			case TILT_X:
+				current.tiltX = level.value;
+				break;
+			case TILT_Y:
+				current.tiltY = level.value;
+				break;
+			case ROTATION:
+				current.rotation = level.value;
+				break;
+			case SIDE_PRESSURE:
+				current.sidePressure = level.value;
+				break;
+			default:
+				break;
+			}
+		}
+		levelsChanged = true;
+	}
+
+	/**
+	 * Apply the current filter to a raw pressure value, resetting it when the pen is lifted.
+	 */
+	private float filterPressure(float value, long timestamp) {
+		var filter = pressureFilter;
+		if (value <= 0f) {
+			filter.reset();
+			return 0f;
+		}
+		return filter.filter(value, timestamp);
+	}
+
+	@Override
+	public void penButtonEvent(PButtonEvent ev) {
+		var type = ev.button.getType();
+		boolean pressed = Boolean.TRUE.equals(ev.button.value);
+		int bit = 1 << type.ordinal();
+		if (pressed)
+			current.buttons |= bit;
+		else
+			current.buttons &= ~bit;
+		var dispatcher = actionDispatcher;
+		if (dispatcher != null) {
+			var action = bindings.getButtonAction(type);
+			if (action == PenAction.PAN)
+				dispatcher.setPanHeld(pressed);
+			else if (pressed)
+				dispatcher.fire(action, 1);
+		}
+	}
+
+	@Override
+	public void penScrollEvent(PScrollEvent ev) {
+		var dispatcher = actionDispatcher;
+		if (dispatcher != null && ev.scroll.value != null)
+			dispatcher.fire(bindings.getScrollAction(ev.scroll.getType()), ev.scroll.value);
+	}
+
+	@Override
+	public void penTock(long availableMillis) {
+		// JPen only fires this at the end of a cycle in which events were processed (which can happen when the pen
+		// is hovering above the device), so it also tells us the sampling interval.
+		// All the changes from the cycle are committed together, so consumers see one consistent update per cycle.
+		long now = System.nanoTime();
+		current.timestamp = now;
+		staleness.recordSample(now);
+		idleSuspender.onCycle(now);
+		recordCycleJitter(now);
+		if (levelsChanged) {
+			if (pressureChanged)
+				current.pressure = filterPressure(rawPressure, now);
+			if (current.isStylusOrEraser())
+				rateController.onStylusInput(now);
+			sampleBuffer.append(now, current.x, current.y, current.pressure, current.tiltX, current.tiltY, current.kind);
+			levelsChanged = false;
+			pressureChanged = false;
+		}
+		publish();
+		kindTracker.onCommit(current);
+		if (publisher.hasSubscribers())
+			publisher.submit(new PenSample(current, pressureCurve.apply(current.pressure)));
+		var props = properties;
+		if (props != null)
+			props.requestUpdate();
+	}
+	
+	/**
+	 * Record how far the interval since the last commit differed from JPen's sampling period.
+	 * Long gaps (when there was no input) are ignored, since they aren't caused by irregular sampling.
+	 */
+	private void recordCycleJitter(long now) {
+		long period = TimeUnit.MILLISECONDS.toNanos(pm.pen.getPeriodMillis());
+		long interval = now - lastCommit;
+		lastCommit = now;
+		if (period > 0 && interval <= period * 4)
+			cycleJitter.record(interval - period, period);
+	}
+
+	@Override
+	public void penDeviceAdded(Constructor providerConstructor, PenDevice penDevice) {
+		logger.debug("PenDevice added: {} ({})", penDevice, providerConstructor);
+		// Ignore the emulation device, which JPen always adds
+		if (pm.penOwner instanceof PenOwnerFX owner && owner.isOwnConstructor(providerConstructor))
+			firstDeviceTimer.close();
+	}
+
+	@Override
+	public void penDeviceRemoved(Constructor providerConstructor, PenDevice penDevice) {
+		logger.debug("PenDevice removed: {} ({})", penDevice, providerConstructor);
+	}
+	
+}
@@ -0,0 +1,275 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.ext.jpen.JPenStartupMetrics.Phase;
+import qupath.lib.common.GeneralTools;
+import qupath.lib.gui.ExtensionClassLoader;
+
+/**
+ * Loader for the JPen native library bundled with the extension.
+ * <p>
+ * Loading is attempted at most once per session: the first call to {@link #load()} does the work,
+ * and all later calls (from any thread) return the same {@link NativeLoadResult}.
+ */
+final class JPenNativeLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(JPenNativeLoader.class);
+
+	private static volatile NativeLoadResult result;
+
+	private JPenNativeLoader() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	/**
+	 * Load the native library, if this hasn't been attempted already.
+	 * This never throws an exception; any failure is recorded in the result.
+	 * @return the result of the (single) load attempt
+	 */
+	static NativeLoadResult load() {
+		var current = result;
+		if (current != null)
+			return current;
+		synchronized (JPenNativeLoader.class) {
+			if (result == null) {
+				result = doLoad();
+				if (result.isLoaded())
+					logger.info("Native library loaded in {} ms", result.getDuration().toMillis());
+				else
+					logger.warn("Unable to preload JPen native library: " + result.getFailure().getLocalizedMessage(), result.getFailure());
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Get the result of loading the native library, without triggering loading.
+	 * @return the result, or null if {@link #load()} has not yet completed
+	 */
+	static NativeLoadResult getResult() {
+		return result;
+	}
+
+	private static NativeLoadResult doLoad() {
+		long startTime = System.nanoTime();
+		List<String> providersFlagged = new ArrayList<>();
+		try {
+			var path = loadNativeLibrary(providersFlagged);
+			return NativeLoadResult.success(path, providersFlagged, Duration.ofNanos(System.nanoTime() - startTime));
+		} catch (Throwable t) {
+			return NativeLoadResult.failure(null, providersFlagged, Duration.ofNanos(System.nanoTime() - startTime), t);
+		}
+	}
+
+	/**
+	 * Try to load native library from the extension jar.
+	 * @param providersFlagged list to which the names of providers are added as they are flagged as loaded
+	 * @return the path to the loaded library
+	 * @throws URISyntaxException
+	 * @throws IOException
+	 * @throws IllegalStateException if the JPen internals are not as expected
+	 */
+	private static Path loadNativeLibrary(List<String> providersFlagged) throws URISyntaxException, IOException, IllegalStateException {
+		var classLoader = ExtensionClassLoader.getInstance();
+		NativeManifest manifest;
+		try (var timer = JPenStartupMetrics.start(Phase.MANIFEST_READ)) {
+			manifest = NativeManifest.read(classLoader);
+		}
+		Path path;
+		if (manifest != null)
+			path = findFromManifest(classLoader, manifest);
+		else
+			path = findByScanning(classLoader);
+		if (path == null)
+			throw new IOException("Unable to extract JPen natives");
+		if (Files.isRegularFile(path)) {
+			logger.trace("Loading {}", path);
+			try (var timer = JPenStartupMetrics.start(Phase.SYSTEM_LOAD)) {
+				System.load(path.toAbsolutePath().toString());
+			}
+			
+			// Try to update for the providers we use
+			for (var provider : PenProviderType.getCandidates()) {
+				logger.trace("Updating {}", provider);
+				try (var timer = JPenStartupMetrics.start(provider.getSetLoadedPhase())) {
+					NativeLoaderBridge.setLoaded(provider.getProviderClass());
+				}
+				providersFlagged.add(provider.getProviderClass().getSimpleName());
+			}
+
+			return path;
+		} else {
+			throw new IOException("Path is not a regular file: " + path);
+		}
+	}
+	
+	/**
+	 * Find the native library using the build-time manifest, extracting it to the cache if necessary.
+	 * This requires a single resource lookup, and avoids mounting or scanning the jar.
+	 * @param classLoader
+	 * @param manifest
+	 * @return
+	 * @throws IOException
+	 */
+	private static Path findFromManifest(ClassLoader classLoader, NativeManifest manifest) throws IOException {
+		NativeManifest.Entry entry;
+		try (var timer = JPenStartupMetrics.start(Phase.NATIVE_SEARCH)) {
+			entry = manifest.findForCurrentPlatform();
+		}
+		if (entry == null) {
+			var platform = NativeManifest.currentOS() + "-" + NativeManifest.currentArch();
+			if (manifest.isPlatformSpecific())
+				throw new IOException("This JPen extension jar is for " + manifest.getPlatforms().get(0)
+						+ ", but QuPath is running on " + platform + " - please install the jar for your platform (or the universal jar)");
+			throw new IOException("No JPen native library available for " + platform + " (available: " + manifest.getPlatforms() + ")");
+		}
+		var cache = NativeLibraryCache.createDefault();
+		Path path;
+		try (var timer = JPenStartupMetrics.start(Phase.CACHE_LOOKUP)) {
+			path = cache.findCached(entry);
+		}
+		if (path != null) {
+			logger.debug("Using cached JPen native library {}", path);
+			return path;
+		}
+		logger.debug("Extracting {} from manifest", entry);
+		try (var timer = JPenStartupMetrics.start(Phase.COPY);
+				var stream = classLoader.getResourceAsStream(entry.getResourcePath())) {
+			if (stream == null)
+				throw new IOException("JPen native library listed in manifest but not found: " + entry.getResourcePath());
+			return cache.store(entry, stream);
+		}
+	}
+	
+	/**
+	 * Find the native library by scanning the natives folder.
+	 * This is used when no manifest is available, e.g. for jars built before the manifest was introduced.
+	 * @param classLoader
+	 * @return
+	 * @throws URISyntaxException
+	 * @throws IOException
+	 */
+	private static Path findByScanning(ClassLoader classLoader) throws URISyntaxException, IOException {
+		URL url;
+		try (var timer = JPenStartupMetrics.start(Phase.RESOURCE_LOOKUP)) {
+			url = classLoader.getResource("natives");
+		}
+		logger.debug("JPen url: {}", url);
+		if (url == null)
+			throw new IOException("Unable to find JPen");
+		URI uri = url.toURI();
+		Path path;
+		if (uri.getScheme().equals("jar")) {
+			var cache = NativeLibraryCache.createDefault();
+			try (var timer = JPenStartupMetrics.start(Phase.CACHE_LOOKUP)) {
+				path = cache.findCached(url, classLoader);
+			}
+			if (path != null) {
+				logger.debug("Using cached JPen native library {}", path);
+			} else {
+				FileSystem fs;
+				try (var timer = JPenStartupMetrics.start(Phase.ZIP_MOUNT)) {
+					fs = FileSystems.newFileSystem(uri, Map.of(), classLoader);
+				}
+				try (fs) {
+					path = extractLib(cache, url, fs.getPath("natives"));
+				}
+			}
+		} else {
+			try (var timer = JPenStartupMetrics.start(Phase.NATIVE_SEARCH);
+					var stream = Files.find(Paths.get(uri), 1, createMatcher())) {
+				path = stream.findFirst().orElse(null);
+			}
+		}
+		return path;
+	}
+	
+	/**
+	 * Extract native library to the persistent native cache.
+	 * @param cache The cache to use
+	 * @param url The URL of the natives folder within the extension jar
+	 * @param pathRoot The file or folder to extract
+	 * @return Path to the extracted file
+	 */
+	private static Path extractLib(NativeLibraryCache cache, URL url, Path pathRoot) throws IOException {
+		Path path;
+		try (var timer = JPenStartupMetrics.start(Phase.NATIVE_SEARCH);
+				var stream = Files.find(pathRoot, 1, createMatcher())) {
+			path = stream.findFirst().orElse(null);
+		}
+		if (path == null)
+			return null;
+		logger.debug("JPen path to extract: {}", path);
+		Path cachedFile;
+		try (var timer = JPenStartupMetrics.start(Phase.COPY)) {
+			cachedFile = cache.store(url, path);
+		}
+		logger.debug("Extraction completed, new file size {}", Files.size(cachedFile));
+		return cachedFile;
+	}
+
+	private static BiPredicate<Path, BasicFileAttributes> createMatcher() {
+		if (GeneralTools.isMac())
+			return (p, a) -> matchLib(p, a, ".jnilib", ".dylib");
+		if (GeneralTools.isWindows())
+			return (p, a) -> matchLib(p, a, "64.dll");
+		if (GeneralTools.isLinux())
+			return (p, a) -> matchLib(p, a, "64.so");
+		return (p, a) -> false;
+	}
+
+	private static boolean matchLib(Path path, BasicFileAttributes attr, String... exts) {
+		if (attr.isDirectory())
+			return false;
+		var name = path.getFileName().toString().toLowerCase();
+		logger.trace("Checking name: {} against {}", name, Arrays.asList(exts));
+		if (!name.startsWith("jpen") && !name.startsWith("libjpen"))
+			return false;
+		for (var ext : exts) {
+			if (name.endsWith(ext))
+				return true;
+		}
+		return false;
+	}
+
+}
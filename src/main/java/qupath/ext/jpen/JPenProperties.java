@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Startup options for the extension, read from system properties with the prefix {@code qupath.jpen.}.
+ * <p>
+ * These are needed before the QuPath preferences are available, and are intended for troubleshooting
+ * or for administrators configuring shared installations (e.g. via the QuPath launcher config).
+ */
+final class JPenProperties {
+
+	private static final Logger logger = LoggerFactory.getLogger(JPenProperties.class);
+
+	static final String PREFIX = "qupath.jpen.";
+
+	/**
+	 * Bootstrap mode: either {@code async} (the default) to set up JPen on a background thread,
+	 * or {@code sync} to set it up while the extension is being installed.
+	 */
+	static final String BOOTSTRAP = PREFIX + "bootstrap";
+
+	private JPenProperties() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	/**
+	 * Query whether JPen should be set up on a background thread.
+	 * @return
+	 */
+	static boolean isAsyncBootstrap() {
+		return !"sync".equalsIgnoreCase(getString(BOOTSTRAP, "async"));
+	}
+
+	static String getString(String key, String defaultValue) {
+		try {
+			return System.getProperty(key, defaultValue);
+		} catch (SecurityException e) {
+			logger.debug("Unable to read property {}: {}", key, e.getLocalizedMessage());
+			return defaultValue;
+		}
+	}
+
+	static boolean getBoolean(String key, boolean defaultValue) {
+		var value = getString(key, null);
+		if (value == null || value.isBlank())
+			return defaultValue;
+		return Boolean.parseBoolean(value.strip());
+	}
+
+	static long getLong(String key, long defaultValue) {
+		var value = getString(key, null);
+		if (value == null || value.isBlank())
+			return defaultValue;
+		try {
+			return Long.parseLong(value.strip());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for {}: {} (using default {})", key, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Get a long value that must lie within a specified range.
+	 * Values outside the range are logged and replaced by the default.
+	 * @param key
+	 * @param defaultValue
+	 * @param min minimum allowed value (inclusive)
+	 * @param max maximum allowed value (inclusive)
+	 * @return
+	 */
+	static long getLong(String key, long defaultValue, long min, long max) {
+		long value = getLong(key, defaultValue);
+		if (value < min || value > max) {
+			logger.warn("Invalid value for {}: {} must be between {} and {} (using default {})", key, value, min, max, defaultValue);
+			return defaultValue;
+		}
+		return value;
+	}
+
+}
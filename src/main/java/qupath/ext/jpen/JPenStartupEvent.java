@@ -0,0 +1,43 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for one phase of the JPen startup.
+ * The event duration is the duration of the phase.
+ */
+@Name("qupath.jpen.StartupPhase")
+@Label("JPen Startup Phase")
+@Description("A single phase of setting up graphics tablet support with JPen")
+@Category({"QuPath", "JPen"})
+@StackTrace(false)
+class JPenStartupEvent extends jdk.jfr.Event {
+
+	@Label("Phase")
+	String phase;
+
+}
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timings for the different phases of setting up JPen.
+ * <p>
+ * Phases are recorded as they complete, and also emitted as JDK Flight Recorder events
+ * (named {@code qupath.jpen.StartupPhase}) so that they can be seen in startup profiles.
+ * A summary is logged once setup is complete.
+ */
+public final class JPenStartupMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(JPenStartupMetrics.class);
+
+	/**
+	 * Phases of the JPen startup.
+	 */
+	public enum Phase {
+		/**
+		 * Read the build-time manifest of native libraries.
+		 */
+		MANIFEST_READ,
+		/**
+		 * Locate the natives folder (only when there is no manifest).
+		 */
+		RESOURCE_LOOKUP,
+		/**
+		 * Check for a previously-extracted native library in the cache.
+		 */
+		CACHE_LOOKUP,
+		/**
+		 * Mount the extension jar as a zip file system (only when there is no manifest).
+		 */
+		ZIP_MOUNT,
+		/**
+		 * Find the native library for the current platform.
+		 */
+		NATIVE_SEARCH,
+		/**
+		 * Copy the native library out of the jar.
+		 */
+		COPY,
+		/**
+		 * Call {@link System#load(String)}.
+		 */
+		SYSTEM_LOAD,
+		/**
+		 * Flag the native library as loaded for the Cocoa provider.
+		 */
+		SET_LOADED_COCOA,
+		/**
+		 * Flag the native library as loaded for the Xinput provider.
+		 */
+		SET_LOADED_XINPUT,
+		/**
+		 * Flag the native library as loaded for the Wintab provider.
+		 */
+		SET_LOADED_WINTAB,
+		/**
+		 * Construct the JPen PenManager.
+		 */
+		PEN_MANAGER,
+		/**
+		 * Time from starting to construct the PenManager until all providers have been constructed.
+		 */
+		PROVIDERS,
+		/**
+		 * Time from starting to construct the PenManager until the first (non-emulated) device is detected.
+		 */
+		FIRST_DEVICE
+	}
+
+	private static final Map<Phase, Duration> durations = Collections.synchronizedMap(new EnumMap<>(Phase.class));
+
+	private JPenStartupMetrics() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	/**
+	 * Get the durations of all phases that have completed so far.
+	 * Phases that were not needed (e.g. copying a library that was already cached) are not included.
+	 * @return an unmodifiable snapshot of the phase durations
+	 */
+	public static Map<Phase, Duration> getPhaseDurations() {
+		synchronized (durations) {
+			return Collections.unmodifiableMap(new EnumMap<>(durations));
+		}
+	}
+
+	/**
+	 * Get the duration of a single phase.
+	 * @param phase
+	 * @return the duration, or null if the phase has not completed
+	 */
+	public static Duration getPhaseDuration(Phase phase) {
+		return durations.get(phase);
+	}
+
+	/**
+	 * Start timing a phase. This is intended to be used with try-with-resources.
+	 * @param phase
+	 * @return a timer that records the phase when closed
+	 */
+	static PhaseTimer start(Phase phase) {
+		return new PhaseTimer(phase);
+	}
+
+	private static void record(Phase phase, long nanos) {
+		durations.put(phase, Duration.ofNanos(nanos));
+		logger.trace("JPen startup phase {} completed in {} ms", phase, nanos / 1e6);
+	}
+
+	/**
+	 * Log a single line summarizing the phase durations.
+	 */
+	static void logSummary() {
+		var map = getPhaseDurations();
+		var total = map.entrySet().stream()
+				.filter(e -> e.getKey() != Phase.PROVIDERS && e.getKey() != Phase.FIRST_DEVICE)
+				.map(Map.Entry::getValue)
+				.reduce(Duration.ZERO, Duration::plus);
+		var phases = map.entrySet().stream()
+				.map(e -> e.getKey().name().toLowerCase(Locale.ROOT) + "=" + formatMillis(e.getValue()))
+				.collect(Collectors.joining(" "));
+		logger.info("JPen startup: total={} {}", formatMillis(total), phases);
+	}
+
+	private static String formatMillis(Duration duration) {
+		return String.format("%.2fms", duration.toNanos() / 1e6);
+	}
+
+	/**
+	 * Timer for a single phase, which also emits a JFR event.
+	 * The timer may be closed on a different thread from the one that started it.
+	 */
+	static final class PhaseTimer implements AutoCloseable {
+
+		private final Phase phase;
+		private final JPenStartupEvent event = new JPenStartupEvent();
+		private final long startNanos = System.nanoTime();
+		private boolean closed = false;
+
+		private PhaseTimer(Phase phase) {
+			this.phase = phase;
+			event.begin();
+		}
+
+		/**
+		 * Stop timing and record the phase. Calling this more than once has no effect.
+		 */
+		@Override
+		public synchronized void close() {
+			if (closed)
+				return;
+			closed = true;
+			long nanos = System.nanoTime() - startNanos;
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = phase.name();
+				event.commit();
+			}
+			record(phase, nanos);
+		}
+
+	}
+
+}
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of timing errors, for measuring how regularly samples arrive.
+ * <p>
+ * Errors are recorded in microseconds, in bins whose widths double: bin 0 holds errors below 1 microsecond, bin 1 errors from
+ * 1 to 2 microseconds, bin 2 from 2 to 4 microseconds, and so on. Samples that arrive more than a full period late are also counted as overruns.
+ * <p>
+ * Recording is lock-free and doesn't allocate, so it can be done from JPen's thread; querying can be done from any thread.
+ */
+public final class JitterHistogram {
+
+	private static final int N_BINS = 24;
+
+	private final AtomicLongArray counts = new AtomicLongArray(N_BINS);
+	private final AtomicLong overruns = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	JitterHistogram() {}
+
+	/**
+	 * Record a timing error.
+	 * @param errorNanos difference between the actual and expected time (or interval); the sign is ignored
+	 * @param periodNanos expected period, used to identify overruns
+	 */
+	void record(long errorNanos, long periodNanos) {
+		long error = Math.abs(errorNanos);
+		counts.incrementAndGet(binFor(error / 1000L));
+		if (error > maxNanos.get())
+			maxNanos.accumulateAndGet(error, Math::max);
+		if (errorNanos > periodNanos)
+			overruns.incrementAndGet();
+	}
+
+	private static int binFor(long micros) {
+		if (micros <= 0)
+			return 0;
+		return Math.min(N_BINS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * Get the number of bins.
+	 * @return
+	 */
+	public int getBinCount() {
+		return N_BINS;
+	}
+
+	/**
+	 * Get the number of samples in a bin.
+	 * @param bin
+	 * @return
+	 */
+	public long getCount(int bin) {
+		return counts.get(bin);
+	}
+
+	/**
+	 * Get the upper bound of a bin, in microseconds. The last bin has no upper bound.
+	 * @param bin
+	 * @return the upper bound, or {@link Long#MAX_VALUE} for the last bin
+	 */
+	public long getUpperBoundMicros(int bin) {
+		return bin == N_BINS - 1 ? Long.MAX_VALUE : 1L << bin;
+	}
+
+	/**
+	 * Get the total number of samples recorded.
+	 * @return
+	 */
+	public long getSampleCount() {
+		long total = 0;
+		for (int i = 0; i < N_BINS; i++)
+			total += counts.get(i);
+		return total;
+	}
+
+	/**
+	 * Get the number of samples that were more than a full period late.
+	 * @return
+	 */
+	public long getOverrunCount() {
+		return overruns.get();
+	}
+
+	/**
+	 * Get the largest error recorded, in microseconds.
+	 * @return
+	 */
+	public long getMaxMicros() {
+		return maxNanos.get() / 1000L;
+	}
+
+	/**
+	 * Get an upper bound on a percentile of the error, in microseconds (based upon the bin containing the percentile).
+	 * @param percentile percentile, between 0 and 100
+	 * @return the upper bound of the bin, or 0 if no samples have been recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long total = getSampleCount();
+		if (total == 0)
+			return 0;
+		long target = (long)Math.ceil(total * Math.max(0, Math.min(100, percentile)) / 100.0);
+		long cumulative = 0;
+		for (int i = 0; i < N_BINS; i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= target && cumulative > 0)
+				return Math.min(getUpperBoundMicros(i), getMaxMicros());
+		}
+		return getMaxMicros();
+	}
+
+	/**
+	 * Discard all recorded samples.
+	 */
+	public void reset() {
+		for (int i = 0; i < N_BINS; i++)
+			counts.set(i, 0L);
+		overruns.set(0L);
+		maxNanos.set(0L);
+	}
+
+	@Override
+	public String toString() {
+		return "JitterHistogram[n=" + getSampleCount() + ", p50=" + getPercentileMicros(50) + " us, p99=" + getPercentileMicros(99)
+			+ " us, max=" + getMaxMicros() + " us, overruns=" + getOverrunCount() + "]";
+	}
+
+}
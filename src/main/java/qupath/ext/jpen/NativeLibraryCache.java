@@ -0,0 +1,306 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.gui.UserDirectoryManager;
+
+/**
+ * Persistent cache for the JPen native library.
+ * <p>
+ * Native libraries are extracted once into a directory named after the SHA-256 of their contents,
+ * below the QuPath user directory (or a directory in the user's home folder if that isn't available).
+ * The cache is always private to the current user, since a library loaded from it runs with their permissions.
+ * <p>
+ * When the jar contains a {@link NativeManifest}, the expected SHA-256 is known in advance.
+ * Otherwise, a small index records which extension jar the library came from, so that later launches can find the cached file
+ * without mounting the jar; the cached file is then checked against the library in the jar, rather than trusting the index.
+ */
+final class NativeLibraryCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(NativeLibraryCache.class);
+
+	private static final String INDEX_NAME = "index.properties";
+
+	private static final String KEY_SOURCE = "source";
+	private static final String KEY_SOURCE_SIZE = "sourceSize";
+	private static final String KEY_SOURCE_MODIFIED = "sourceModified";
+	private static final String KEY_FILE = "file";
+	private static final String KEY_SHA256 = "sha256";
+
+	private final Path cacheDir;
+
+	NativeLibraryCache(Path cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Create a cache in the default location.
+	 * This is within the QuPath user directory if available, or the user's home directory otherwise.
+	 * @return
+	 */
+	static NativeLibraryCache createDefault() {
+		return new NativeLibraryCache(getDefaultCacheDirectory());
+	}
+
+	static Path getDefaultCacheDirectory() {
+		Path base = null;
+		try {
+			base = UserDirectoryManager.getInstance().getUserPath();
+		} catch (Throwable t) {
+			logger.debug("Unable to query QuPath user directory: {}", t.getLocalizedMessage());
+		}
+		if (base == null)
+			// Don't fall back to the shared temp directory, where another user could plant a library
+			base = Paths.get(System.getProperty("user.home"), ".qupath-jpen");
+		return base.resolve("cache").resolve("jpen").resolve("natives");
+	}
+
+	Path getCacheDirectory() {
+		return cacheDir;
+	}
+
+	/**
+	 * Find a previously-cached native library extracted from the jar containing the specified URL.
+	 * The index is only used to locate the file: it is returned only if its SHA-256 matches that of the library
+	 * still in the jar, which is read directly through the class loader (without mounting the jar).
+	 * @param nativesUrl URL of the natives folder, as returned by the extension class loader
+	 * @param classLoader class loader used to read the library from the jar
+	 * @return the cached file, or null if no valid cached file is available
+	 */
+	Path findCached(URL nativesUrl, ClassLoader classLoader) {
+		var source = getSourceJar(nativesUrl);
+		if (source == null)
+			return null;
+		var indexFile = cacheDir.resolve(INDEX_NAME);
+		if (!Files.isRegularFile(indexFile))
+			return null;
+		try {
+			var props = readIndex(indexFile);
+			if (!source.toString().equals(props.getProperty(KEY_SOURCE)) ||
+					!Long.toString(Files.size(source)).equals(props.getProperty(KEY_SOURCE_SIZE)) ||
+					!Long.toString(Files.getLastModifiedTime(source).toMillis()).equals(props.getProperty(KEY_SOURCE_MODIFIED))) {
+				logger.debug("Native cache index does not match {}", source);
+				return null;
+			}
+			var sha = props.getProperty(KEY_SHA256);
+			var file = props.getProperty(KEY_FILE);
+			if (sha == null || file == null)
+				return null;
+			var path = cacheDir.resolve(sha).resolve(file);
+			if (!Files.isRegularFile(path))
+				return null;
+			String expectedSha;
+			try (var stream = classLoader.getResourceAsStream("natives/" + file)) {
+				if (stream == null)
+					return null;
+				expectedSha = sha256(stream);
+			}
+			if (!expectedSha.equalsIgnoreCase(sha) || !expectedSha.equalsIgnoreCase(sha256(path))) {
+				logger.warn("Cached native library {} failed verification, will extract again", path);
+				return null;
+			}
+			return path;
+		} catch (Exception e) {
+			logger.debug("Unable to read native cache index: {}", e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Find a previously-cached copy of a native library listed in the build-time manifest.
+	 * Because the expected SHA-256 is known, no index is needed.
+	 * @param entry the manifest entry
+	 * @return the cached file, or null if no valid cached file is available
+	 */
+	Path findCached(NativeManifest.Entry entry) {
+		var path = cacheDir.resolve(entry.getSha256()).resolve(entry.getFile());
+		try {
+			if (!Files.isRegularFile(path) || Files.size(path) != entry.getSize())
+				return null;
+			if (!entry.getSha256().equalsIgnoreCase(sha256(path))) {
+				logger.warn("Cached native library {} failed verification, will extract again", path);
+				return null;
+			}
+			return path;
+		} catch (IOException e) {
+			logger.debug("Unable to check cached native library: {}", e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Copy a native library listed in the build-time manifest into the cache.
+	 * The bytes are checked against the SHA-256 in the manifest as they are copied.
+	 * @param entry the manifest entry
+	 * @param stream input stream providing the library bytes; this is not closed
+	 * @return the path to the cached file
+	 * @throws IOException if the library could not be copied, or the bytes do not match the manifest
+	 */
+	Path store(NativeManifest.Entry entry, InputStream stream) throws IOException {
+		return copyToCache(stream, entry.getFile(), entry.getSha256());
+	}
+
+	/**
+	 * Copy a native library into the cache, if it isn't already present, and record it in the index.
+	 * @param nativesUrl URL of the natives folder, used to identify the source jar
+	 * @param path path to the native library; usually inside a zip file system
+	 * @return the path to the cached file
+	 * @throws IOException
+	 */
+	Path store(URL nativesUrl, Path path) throws IOException {
+		var name = path.getFileName().toString();
+		Path target;
+		try (var stream = Files.newInputStream(path)) {
+			target = copyToCache(stream, name, null);
+		}
+		writeIndex(nativesUrl, name, target.getParent().getFileName().toString());
+		return target;
+	}
+
+	private Path copyToCache(InputStream input, String name, String expectedSha) throws IOException {
+		Files.createDirectories(cacheDir);
+		var tempFile = Files.createTempFile(cacheDir, name, ".tmp");
+		try {
+			String sha;
+			var stream = new DigestInputStream(input, createDigest());
+			try (OutputStream out = Files.newOutputStream(tempFile)) {
+				stream.transferTo(out);
+			}
+			sha = HexFormat.of().formatHex(stream.getMessageDigest().digest());
+			if (expectedSha != null && !expectedSha.equalsIgnoreCase(sha))
+				throw new IOException("SHA-256 mismatch for " + name + ": expected " + expectedSha + " but found " + sha);
+			var target = cacheDir.resolve(sha).resolve(name);
+			if (Files.isRegularFile(target) && sha.equals(sha256(target))) {
+				logger.debug("Native library already cached at {}", target);
+			} else {
+				Files.createDirectories(target.getParent());
+				moveAtomically(tempFile, target);
+				logger.debug("Cached native library at {}", target);
+			}
+			return target;
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private void writeIndex(URL nativesUrl, String name, String sha) {
+		var source = getSourceJar(nativesUrl);
+		if (source == null)
+			return;
+		try {
+			var props = new Properties();
+			props.setProperty(KEY_SOURCE, source.toString());
+			props.setProperty(KEY_SOURCE_SIZE, Long.toString(Files.size(source)));
+			props.setProperty(KEY_SOURCE_MODIFIED, Long.toString(Files.getLastModifiedTime(source).toMillis()));
+			props.setProperty(KEY_FILE, name);
+			props.setProperty(KEY_SHA256, sha);
+			var tempFile = Files.createTempFile(cacheDir, INDEX_NAME, ".tmp");
+			try (var out = Files.newOutputStream(tempFile)) {
+				props.store(out, "JPen native library cache");
+			}
+			moveAtomically(tempFile, cacheDir.resolve(INDEX_NAME));
+		} catch (IOException e) {
+			logger.warn("Unable to write native cache index: {}", e.getLocalizedMessage());
+		}
+	}
+
+	private static Properties readIndex(Path path) throws IOException {
+		var props = new Properties();
+		try (var stream = Files.newInputStream(path)) {
+			props.load(stream);
+		}
+		return props;
+	}
+
+	private static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Get the path to the jar file containing a resource URL, or null if the URL doesn't refer to a jar.
+	 * @param url
+	 * @return
+	 */
+	static Path getSourceJar(URL url) {
+		if (url == null || !"jar".equals(url.getProtocol()))
+			return null;
+		var spec = url.getPath();
+		int ind = spec.indexOf("!/");
+		if (ind < 0)
+			return null;
+		try {
+			return Paths.get(new URI(spec.substring(0, ind)));
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			logger.debug("Unable to determine jar for {}", url);
+			return null;
+		}
+	}
+
+	static String sha256(Path path) throws IOException {
+		try (var stream = Files.newInputStream(path)) {
+			return sha256(stream);
+		}
+	}
+
+	/**
+	 * Compute the SHA-256 of the remaining bytes of a stream, as lowercase hex. The stream is not closed.
+	 */
+	private static String sha256(InputStream input) throws IOException {
+		var stream = new DigestInputStream(input, createDigest());
+		stream.transferTo(OutputStream.nullOutputStream());
+		return HexFormat.of().formatHex(stream.getMessageDigest().digest());
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Immutable summary of an attempt to load the JPen native library.
+ */
+final class NativeLoadResult {
+
+	private final Path path;
+	private final List<String> providersFlagged;
+	private final Duration duration;
+	private final Throwable failure;
+
+	private NativeLoadResult(Path path, List<String> providersFlagged, Duration duration, Throwable failure) {
+		this.path = path;
+		this.providersFlagged = List.copyOf(providersFlagged);
+		this.duration = duration;
+		this.failure = failure;
+	}
+
+	static NativeLoadResult success(Path path, List<String> providersFlagged, Duration duration) {
+		return new NativeLoadResult(path, providersFlagged, duration, null);
+	}
+
+	static NativeLoadResult failure(Path path, List<String> providersFlagged, Duration duration, Throwable failure) {
+		return new NativeLoadResult(path, providersFlagged, duration, failure);
+	}
+
+	/**
+	 * Query whether the native library was loaded successfully.
+	 * @return
+	 */
+	boolean isLoaded() {
+		return failure == null;
+	}
+
+	/**
+	 * Get the path to the native library, if one was found.
+	 * @return the path, or null if no library was found
+	 */
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Get the simple names of the provider classes that were marked as having their library loaded.
+	 * @return
+	 */
+	List<String> getProvidersFlagged() {
+		return providersFlagged;
+	}
+
+	/**
+	 * Get the total time spent loading.
+	 * @return
+	 */
+	Duration getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Get the reason loading failed.
+	 * @return the cause of the failure, or null if loading succeeded
+	 */
+	Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		if (isLoaded())
+			return "NativeLoadResult[loaded " + path + " in " + duration.toMillis() + " ms, providers=" + providersFlagged + "]";
+		return "NativeLoadResult[failed after " + duration.toMillis() + " ms: " + failure.getLocalizedMessage() + "]";
+	}
+
+}
@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import jpen.PenManager;
+import jpen.provider.NativeLibraryLoader;
+
+/**
+ * Access to JPen internals needed to support loading the native library from a jar.
+ * <p>
+ * JPen's {@link NativeLibraryLoader} uses {@link System#loadLibrary(String)}, which can't find a library inside the extension jar.
+ * After we have loaded the library ourselves, we need to set the private {@code loaded} flag of the
+ * {@code LIB_LOADER} held by each provider class.
+ * <p>
+ * The handles needed for this are resolved once and cached. If JPen's internals don't have the expected shape
+ * (e.g. after updating JPen), an {@link IllegalStateException} is thrown describing what was expected,
+ * and the same exception is thrown again on every later call.
+ */
+final class NativeLoaderBridge {
+
+	private static final String LOADED_FIELD = "loaded";
+	private static final String LIB_LOADER_FIELD = "LIB_LOADER";
+
+	private static final ClassValue<VarHandle> LIB_LOADER_HANDLES = new ClassValue<>() {
+		@Override
+		protected VarHandle computeValue(Class<?> type) {
+			try {
+				return MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+						.findStaticVarHandle(type, LIB_LOADER_FIELD, NativeLibraryLoader.class);
+			} catch (NoSuchFieldException | IllegalAccessException e) {
+				throw incompatible("private static final " + NativeLibraryLoader.class.getName() + " " + LIB_LOADER_FIELD + " in " + type.getName(), e);
+			}
+		}
+	};
+
+	private NativeLoaderBridge() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	/**
+	 * Handle to {@code NativeLibraryLoader.loaded}, or the exception describing why it couldn't be resolved.
+	 * This is only resolved when first needed.
+	 */
+	private static volatile Object loadedHandle;
+
+	private static VarHandle getLoadedHandle() throws IllegalStateException {
+		var handle = loadedHandle;
+		if (handle == null) {
+			synchronized (NativeLoaderBridge.class) {
+				handle = loadedHandle;
+				if (handle == null) {
+					handle = resolveLoadedHandle();
+					loadedHandle = handle;
+				}
+			}
+		}
+		if (handle instanceof IllegalStateException e)
+			throw e;
+		return (VarHandle)handle;
+	}
+
+	private static Object resolveLoadedHandle() {
+		try {
+			return MethodHandles.privateLookupIn(NativeLibraryLoader.class, MethodHandles.lookup())
+					.findVarHandle(NativeLibraryLoader.class, LOADED_FIELD, boolean.class);
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			return incompatible("private boolean " + LOADED_FIELD + " in " + NativeLibraryLoader.class.getName(), e);
+		}
+	}
+
+	/**
+	 * Flag the native library as loaded for the specified provider class.
+	 * This initializes the provider class, if it has not already been initialized.
+	 * @param providerClass the provider class, e.g. {@code XinputProvider.class}
+	 * @throws IllegalStateException if JPen's internals don't have the expected shape
+	 */
+	static void setLoaded(Class<?> providerClass) throws IllegalStateException {
+		var loader = getLibLoader(providerClass);
+		getLoadedHandle().setVolatile(loader, true);
+	}
+
+	/**
+	 * Query whether the native library is flagged as loaded for the specified provider class.
+	 * @param providerClass
+	 * @return
+	 * @throws IllegalStateException if JPen's internals don't have the expected shape
+	 */
+	static boolean isLoaded(Class<?> providerClass) throws IllegalStateException {
+		var loader = getLibLoader(providerClass);
+		return (boolean)getLoadedHandle().getVolatile(loader);
+	}
+
+	private static NativeLibraryLoader getLibLoader(Class<?> providerClass) {
+		var loader = (NativeLibraryLoader)LIB_LOADER_HANDLES.get(providerClass).get();
+		if (loader == null)
+			throw incompatible("non-null " + LIB_LOADER_FIELD + " in " + providerClass.getName(), null);
+		return loader;
+	}
+
+	private static IllegalStateException incompatible(String expected, Throwable cause) {
+		String version;
+		try {
+			version = PenManager.getJPenFullVersion();
+		} catch (Throwable t) {
+			version = "unknown";
+		}
+		return new IllegalStateException("Incompatible JPen version (" + version + "): expected " + expected, cause);
+	}
+
+}
@@ -0,0 +1,239 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.GeneralTools;
+
+/**
+ * Index of the native libraries bundled with the extension, generated at build time.
+ * <p>
+ * This means the loader can go straight to the library for the current platform,
+ * without scanning the jar, and verify it against a known SHA-256.
+ * <p>
+ * The same format is used by the universal jar (which lists every supported platform)
+ * and by the platform-specific jars (which list only one).
+ */
+final class NativeManifest {
+
+	private static final Logger logger = LoggerFactory.getLogger(NativeManifest.class);
+
+	/**
+	 * Path of the manifest resource, relative to the extension jar root.
+	 */
+	static final String RESOURCE = "natives/natives.properties";
+
+	private final List<Entry> entries;
+
+	private NativeManifest(List<Entry> entries) {
+		this.entries = List.copyOf(entries);
+	}
+
+	/**
+	 * Read the manifest using the specified class loader.
+	 * @param loader
+	 * @return the manifest, or null if it could not be found (e.g. when running from an IDE)
+	 * @throws IOException if the manifest was found but could not be read
+	 */
+	static NativeManifest read(ClassLoader loader) throws IOException {
+		try (var stream = loader.getResourceAsStream(RESOURCE)) {
+			if (stream == null)
+				return null;
+			var props = new Properties();
+			props.load(stream);
+			return parse(props);
+		}
+	}
+
+	static NativeManifest parse(Properties props) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		try {
+			int count = Integer.parseInt(props.getProperty("native.count", "0"));
+			for (int i = 0; i < count; i++) {
+				var prefix = "native." + i + ".";
+				entries.add(new Entry(
+						require(props, prefix + "file"),
+						require(props, prefix + "os"),
+						require(props, prefix + "arch"),
+						Long.parseLong(require(props, prefix + "size")),
+						require(props, prefix + "sha256")));
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid native manifest: " + e.getLocalizedMessage(), e);
+		}
+		return new NativeManifest(entries);
+	}
+
+	private static String require(Properties props, String key) throws IOException {
+		var value = props.getProperty(key);
+		if (value == null || value.isBlank())
+			throw new IOException("Invalid native manifest: missing " + key);
+		return value.strip();
+	}
+
+	List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Query whether this manifest describes a platform-specific jar, containing a single native library.
+	 * @return
+	 */
+	boolean isPlatformSpecific() {
+		return entries.size() == 1;
+	}
+
+	/**
+	 * Get the platforms supported by the libraries in this manifest.
+	 * @return a list of platform names, in the form "os-arch"
+	 */
+	List<String> getPlatforms() {
+		return entries.stream().map(Entry::getPlatform).toList();
+	}
+
+	/**
+	 * Find the native library for the current platform.
+	 * @return the entry, or null if the platform isn't supported
+	 */
+	Entry findForCurrentPlatform() {
+		return find(currentOS(), currentArch());
+	}
+
+	Entry find(String os, String arch) {
+		for (var entry : entries) {
+			if (entry.getOS().equals(os) && entry.getArch().equals(arch))
+				return entry;
+		}
+		logger.debug("No native library in manifest for {}-{}", os, arch);
+		return null;
+	}
+
+	/**
+	 * Get the name of the current operating system, as used in the manifest.
+	 * @return one of "linux", "macos", "windows" or "unknown"
+	 */
+	static String currentOS() {
+		if (GeneralTools.isMac())
+			return "macos";
+		if (GeneralTools.isWindows())
+			return "windows";
+		if (GeneralTools.isLinux())
+			return "linux";
+		return "unknown";
+	}
+
+	/**
+	 * Get the normalized name of the current architecture, as used in the manifest.
+	 * @return a name such as "x86_64" or "aarch64"
+	 */
+	static String currentArch() {
+		var arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+		switch (arch) {
+		case "amd64":
+		case "x86_64":
+		case "x64":
+			return "x86_64";
+		case "aarch64":
+		case "arm64":
+			return "aarch64";
+		case "x86":
+		case "i386":
+		case "i486":
+		case "i586":
+		case "i686":
+			return "x86";
+		default:
+			return arch;
+		}
+	}
+
+	/**
+	 * A single native library listed in the manifest.
+	 */
+	static final class Entry {
+
+		private final String file;
+		private final String os;
+		private final String arch;
+		private final long size;
+		private final String sha256;
+
+		Entry(String file, String os, String arch, long size, String sha256) {
+			this.file = file;
+			this.os = os;
+			this.arch = arch;
+			this.size = size;
+			this.sha256 = sha256;
+		}
+
+		String getFile() {
+			return file;
+		}
+
+		String getOS() {
+			return os;
+		}
+
+		String getArch() {
+			return arch;
+		}
+
+		/**
+		 * Get the platform name, in the form "os-arch".
+		 * @return
+		 */
+		String getPlatform() {
+			return os + "-" + arch;
+		}
+
+		long getSize() {
+			return size;
+		}
+
+		String getSha256() {
+			return sha256;
+		}
+
+		/**
+		 * Get the path of the library resource, relative to the jar root.
+		 * @return
+		 */
+		String getResourcePath() {
+			return "natives/" + file;
+		}
+
+		@Override
+		public String toString() {
+			return file + " (" + getPlatform() + ", " + size + " bytes)";
+		}
+
+	}
+
+}
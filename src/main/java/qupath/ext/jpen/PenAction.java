@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+/**
+ * QuPath actions that can be bound to pen buttons and scroll controls (see {@link PenBindings}).
+ */
+public enum PenAction {
+
+	/**
+	 * Do nothing.
+	 */
+	NONE,
+	/**
+	 * Select the Move tool.
+	 */
+	MOVE_TOOL,
+	/**
+	 * Select the Brush tool.
+	 */
+	BRUSH_TOOL,
+	/**
+	 * Select the Wand tool.
+	 */
+	WAND_TOOL,
+	/**
+	 * Use the Move tool while the button is held, returning to the previous tool when it is released.
+	 */
+	PAN,
+	/**
+	 * Undo the last change.
+	 */
+	UNDO,
+	/**
+	 * Redo the last undone change.
+	 */
+	REDO,
+	/**
+	 * Zoom in the active viewer.
+	 */
+	ZOOM_IN,
+	/**
+	 * Zoom out the active viewer.
+	 */
+	ZOOM_OUT
+
+}
@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import qupath.lib.gui.QuPathGUI;
+import qupath.lib.gui.viewer.tools.PathTool;
+import qupath.lib.gui.viewer.tools.PathTools;
+
+/**
+ * Hand off {@link PenAction}s from JPen's thread to the JavaFX thread, where they are performed.
+ * <p>
+ * Actions are recorded as counts in a preallocated array, and a single preallocated task is posted to the JavaFX thread
+ * to perform everything that is pending. This means there is no allocation per event, and a burst of events
+ * (e.g. from a touch strip) results in only one call to {@link Platform#runLater(Runnable)}.
+ */
+class PenActionDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(PenActionDispatcher.class);
+
+	private static final PenAction[] ACTIONS = PenAction.values();
+
+	private final QuPathGUI qupath;
+
+	private final AtomicIntegerArray pending = new AtomicIntegerArray(ACTIONS.length);
+	private volatile boolean panRequested = false;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Runnable dispatchTask = this::dispatch;
+
+	// Only accessed from the JavaFX thread
+	private boolean panning = false;
+	private PathTool toolBeforePan;
+
+	PenActionDispatcher(QuPathGUI qupath) {
+		this.qupath = qupath;
+	}
+
+	/**
+	 * Request that an action be performed. This is called from JPen's thread.
+	 * @param action the action
+	 * @param count number of times to perform the action (e.g. zoom steps)
+	 */
+	void fire(PenAction action, int count) {
+		if (action == PenAction.NONE || count <= 0)
+			return;
+		pending.addAndGet(action.ordinal(), count);
+		schedule();
+	}
+
+	/**
+	 * Notify that a button bound to {@link PenAction#PAN} was pressed or released. This is called from JPen's thread.
+	 * @param held
+	 */
+	void setPanHeld(boolean held) {
+		panRequested = held;
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true))
+			Platform.runLater(dispatchTask);
+	}
+
+	private void dispatch() {
+		scheduled.set(false);
+		try {
+			updatePan(panRequested);
+			for (var action : ACTIONS) {
+				int count = pending.getAndSet(action.ordinal(), 0);
+				if (count > 0)
+					perform(action, count);
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Unable to perform pen action: {}", e.getLocalizedMessage(), e);
+		}
+	}
+
+	private void updatePan(boolean requested) {
+		if (requested == panning)
+			return;
+		var toolManager = qupath.getToolManager();
+		if (requested) {
+			toolBeforePan = toolManager.getSelectedTool();
+			toolManager.setSelectedTool(PathTools.MOVE);
+		} else if (toolBeforePan != null && toolManager.getSelectedTool() == PathTools.MOVE) {
+			toolManager.setSelectedTool(toolBeforePan);
+			toolBeforePan = null;
+		}
+		panning = requested;
+	}
+
+	private void perform(PenAction action, int count) {
+		switch (action) {
+		case MOVE_TOOL:
+			selectTool(PathTools.MOVE);
+			break;
+		case BRUSH_TOOL:
+			selectTool(PathTools.BRUSH);
+			break;
+		case WAND_TOOL:
+			selectTool(PathTools.WAND);
+			break;
+		case UNDO:
+			for (int i = 0; i < count; i++) {
+				if (!qupath.getUndoRedoManager().undoOnce())
+					break;
+			}
+			break;
+		case REDO:
+			for (int i = 0; i < count; i++) {
+				if (!qupath.getUndoRedoManager().redoOnce())
+					break;
+			}
+			break;
+		case ZOOM_IN:
+			var viewerIn = qupath.getViewer();
+			if (viewerIn != null)
+				viewerIn.zoomIn(count);
+			break;
+		case ZOOM_OUT:
+			var viewerOut = qupath.getViewer();
+			if (viewerOut != null)
+				viewerOut.zoomOut(count);
+			break;
+		case PAN:
+		case NONE:
+		default:
+			break;
+		}
+	}
+
+	private void selectTool(PathTool tool) {
+		// If the user is panning, make the new tool the one to return to
+		if (panning)
+			toolBeforePan = tool;
+		else
+			qupath.getToolManager().setSelectedTool(tool);
+	}
+
+}
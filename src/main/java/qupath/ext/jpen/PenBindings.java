@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import jpen.PButton;
+import jpen.PScroll;
+
+/**
+ * Immutable table mapping pen buttons and scroll controls (e.g. tablet wheels or touch strips) to {@link PenAction}s.
+ * <p>
+ * Lookups are a single array access, so they can be done on JPen's thread for every event.
+ * Bindings can be written as, and parsed from, a specification such as {@code "CENTER=PAN;RIGHT=UNDO;UP=ZOOM_IN;DOWN=ZOOM_OUT"},
+ * where the keys are the names of {@link PButton.Type} and {@link PScroll.Type} values.
+ * Keys may be prefixed with {@code BUTTON_} or {@code SCROLL_}, which is required for names used by both
+ * (i.e. {@code BUTTON_CUSTOM} and {@code SCROLL_CUSTOM}).
+ */
+public final class PenBindings {
+
+	private static final PButton.Type[] BUTTON_TYPES = PButton.Type.values();
+	private static final PScroll.Type[] SCROLL_TYPES = PScroll.Type.values();
+
+	private static final String BUTTON_PREFIX = "BUTTON_";
+	private static final String SCROLL_PREFIX = "SCROLL_";
+
+	/**
+	 * Bindings in which nothing is bound, leaving pen buttons to behave as the operating system defines.
+	 */
+	public static final PenBindings NONE = new PenBindings(new PenAction[BUTTON_TYPES.length], new PenAction[SCROLL_TYPES.length]);
+
+	private final PenAction[] buttonActions;
+	private final PenAction[] scrollActions;
+
+	private PenBindings(PenAction[] buttonActions, PenAction[] scrollActions) {
+		this.buttonActions = buttonActions;
+		this.scrollActions = scrollActions;
+		for (int i = 0; i < buttonActions.length; i++) {
+			if (buttonActions[i] == null)
+				buttonActions[i] = PenAction.NONE;
+		}
+		for (int i = 0; i < scrollActions.length; i++) {
+			if (scrollActions[i] == null)
+				scrollActions[i] = PenAction.NONE;
+		}
+	}
+
+	/**
+	 * Get the action bound to a button.
+	 * @param button
+	 * @return the action, or {@link PenAction#NONE} if nothing is bound
+	 */
+	public PenAction getButtonAction(PButton.Type button) {
+		return buttonActions[button.ordinal()];
+	}
+
+	/**
+	 * Get the action bound to a scroll direction.
+	 * @param scroll
+	 * @return the action, or {@link PenAction#NONE} if nothing is bound
+	 */
+	public PenAction getScrollAction(PScroll.Type scroll) {
+		return scrollActions[scroll.ordinal()];
+	}
+
+	/**
+	 * Create a copy of these bindings, with a button bound to a different action.
+	 * @param button
+	 * @param action the action, or null to unbind the button
+	 * @return
+	 */
+	public PenBindings withButtonAction(PButton.Type button, PenAction action) {
+		var buttons = buttonActions.clone();
+		buttons[button.ordinal()] = action;
+		return new PenBindings(buttons, scrollActions.clone());
+	}
+
+	/**
+	 * Create a copy of these bindings, with a scroll direction bound to a different action.
+	 * @param scroll
+	 * @param action the action, or null to unbind the scroll direction
+	 * @return
+	 */
+	public PenBindings withScrollAction(PScroll.Type scroll, PenAction action) {
+		var scrolls = scrollActions.clone();
+		scrolls[scroll.ordinal()] = action;
+		return new PenBindings(buttonActions.clone(), scrolls);
+	}
+
+	/**
+	 * Parse bindings from their specification, as returned by {@link #toString()}.
+	 * @param spec the specification; if null or blank, {@link #NONE} is returned
+	 * @return the bindings
+	 * @throws IllegalArgumentException if the specification cannot be parsed
+	 */
+	public static PenBindings parse(String spec) throws IllegalArgumentException {
+		if (spec == null || spec.isBlank())
+			return NONE;
+		var buttons = new PenAction[BUTTON_TYPES.length];
+		var scrolls = new PenAction[SCROLL_TYPES.length];
+		for (var token : spec.split(";")) {
+			if (token.isBlank())
+				continue;
+			int ind = token.indexOf('=');
+			if (ind < 0)
+				throw new IllegalArgumentException("Invalid pen binding: " + token.strip());
+			var key = token.substring(0, ind).strip().toUpperCase(Locale.ROOT);
+			var value = token.substring(ind + 1).strip().toUpperCase(Locale.ROOT);
+			PenAction action;
+			try {
+				action = PenAction.valueOf(value);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown pen action: " + value);
+			}
+			PButton.Type button;
+			PScroll.Type scroll;
+			if (key.startsWith(BUTTON_PREFIX)) {
+				button = find(BUTTON_TYPES, key.substring(BUTTON_PREFIX.length()));
+				scroll = null;
+			} else if (key.startsWith(SCROLL_PREFIX)) {
+				button = null;
+				scroll = find(SCROLL_TYPES, key.substring(SCROLL_PREFIX.length()));
+			} else {
+				button = find(BUTTON_TYPES, key);
+				scroll = find(SCROLL_TYPES, key);
+				if (button != null && scroll != null)
+					throw new IllegalArgumentException("Ambiguous pen binding " + key + " - use " + BUTTON_PREFIX + key + " or " + SCROLL_PREFIX + key);
+			}
+			if (button != null)
+				buttons[button.ordinal()] = action;
+			else if (scroll != null)
+				scrolls[scroll.ordinal()] = action;
+			else
+				throw new IllegalArgumentException("Unknown pen button or scroll control: " + key);
+		}
+		return new PenBindings(buttons, scrolls);
+	}
+
+	private static <T extends Enum<T>> T find(T[] values, String name) {
+		for (var value : values) {
+			if (value.name().equals(name))
+				return value;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the specification of these bindings, which can be passed to {@link #parse(String)}.
+	 */
+	@Override
+	public String toString() {
+		var sb = new StringBuilder();
+		for (var button : BUTTON_TYPES)
+			append(sb, toKey(BUTTON_PREFIX, button, SCROLL_TYPES), buttonActions[button.ordinal()]);
+		for (var scroll : SCROLL_TYPES)
+			append(sb, toKey(SCROLL_PREFIX, scroll, BUTTON_TYPES), scrollActions[scroll.ordinal()]);
+		return sb.toString();
+	}
+
+	/**
+	 * Get the key for a button or scroll control, which only includes the prefix if the name is also used by the other type.
+	 */
+	private static String toKey(String prefix, Enum<?> value, Enum<?>[] otherValues) {
+		for (var other : otherValues) {
+			if (other.name().equals(value.name()))
+				return prefix + value.name();
+		}
+		return value.name();
+	}
+
+	private static void append(StringBuilder sb, String key, PenAction action) {
+		if (action == PenAction.NONE)
+			return;
+		if (sb.length() > 0)
+			sb.append(';');
+		sb.append(key).append('=').append(action.name());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PenBindings other))
+			return false;
+		return Arrays.equals(buttonActions, other.buttonActions) && Arrays.equals(scrollActions, other.scrollActions);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(buttonActions) + Arrays.hashCode(scrollActions);
+	}
+
+}
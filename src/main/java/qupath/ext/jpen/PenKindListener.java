@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import jpen.PKind;
+
+/**
+ * Listener notified when the kind of pen changes (e.g. the stylus is flipped to use the eraser),
+ * or when a stylus or eraser enters or leaves the proximity of the tablet.
+ * <p>
+ * This allows tools to switch mode once per transition, rather than checking {@link ExtendedPenInputManager#isEraser()}
+ * for every input event. Notifications are delivered in order on a background thread (not the JavaFX thread),
+ * and should return quickly.
+ */
+public interface PenKindListener {
+
+	/**
+	 * Called when the kind of pen changes.
+	 * @param previous the previous kind, or null if unknown
+	 * @param current the new kind, or null if unknown
+	 */
+	void penKindChanged(PKind.Type previous, PKind.Type current);
+
+	/**
+	 * Called when a stylus or eraser enters or leaves the proximity of the tablet.
+	 * Leaving is detected when there has been no input for a short time (learned from the sampling interval),
+	 * or when the pen kind changes to one that isn't a stylus or eraser.
+	 * @param inProximity true if the pen is now in proximity, false if it has left
+	 */
+	default void penProximityChanged(boolean inProximity) {}
+
+}
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jpen.PKind;
+
+/**
+ * Detect changes in pen kind and proximity, and notify {@link PenKindListener}s.
+ * <p>
+ * Changes are detected when JPen commits its state, and when a timer finds that a stylus has stopped reporting.
+ * Notifications are always delivered on the {@link BackgroundTimer} thread, so that they arrive in order
+ * and listeners can't hold up JPen.
+ */
+final class PenKindTracker {
+
+	private static final Logger logger = LoggerFactory.getLogger(PenKindTracker.class);
+
+	private static final PKind.Type[] KIND_TYPES = PKind.Type.values();
+
+	private final StalenessEstimator staleness;
+	private final List<PenKindListener> listeners = new CopyOnWriteArrayList<>();
+
+	private static final int KIND_ERASER = PKind.Type.ERASER.ordinal();
+
+	// Only written from JPen's thread
+	private volatile int kind;
+
+	private volatile long lastStylusInput = 0L;
+	private volatile boolean inProximity = false;
+
+	PenKindTracker(StalenessEstimator staleness, int initialKind) {
+		this.staleness = staleness;
+		this.kind = initialKind;
+	}
+
+	void addListener(PenKindListener listener) {
+		listeners.add(listener);
+	}
+
+	void removeListener(PenKindListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Query whether a stylus or eraser is currently considered to be in proximity of the tablet.
+	 * @return
+	 */
+	boolean isInProximity() {
+		return inProximity;
+	}
+
+	/**
+	 * Query whether the eraser is currently in proximity of the tablet, using the most recently committed kind.
+	 * @return
+	 */
+	boolean isEraser() {
+		return inProximity && kind == KIND_ERASER;
+	}
+
+	/**
+	 * Notify the tracker of a committed state. This is called from JPen's thread, and is cheap unless something has changed.
+	 * @param state
+	 */
+	void onCommit(PenState state) {
+		int newKind = state.kind;
+		if (newKind != kind) {
+			var previous = toType(kind);
+			var current = toType(newKind);
+			kind = newKind;
+			notifyKindChanged(previous, current);
+		}
+		if (state.isStylusOrEraser()) {
+			lastStylusInput = state.timestamp;
+			if (!inProximity)
+				setInProximity(true);
+		} else if (inProximity)
+			setInProximity(false);
+	}
+
+	private static PKind.Type toType(int kind) {
+		return kind < 0 || kind >= KIND_TYPES.length ? null : KIND_TYPES[kind];
+	}
+
+	private synchronized void setInProximity(boolean proximity) {
+		if (inProximity == proximity)
+			return;
+		inProximity = proximity;
+		if (proximity)
+			BackgroundTimer.schedule(this::checkProximity, staleness.getWindowNanos());
+		if (!listeners.isEmpty())
+			BackgroundTimer.execute(() -> notifyProximityChanged(proximity));
+	}
+
+	private synchronized void checkProximity() {
+		if (!inProximity)
+			return;
+		long idle = System.nanoTime() - lastStylusInput;
+		long window = staleness.getWindowNanos();
+		if (idle >= window)
+			setInProximity(false);
+		else
+			BackgroundTimer.schedule(this::checkProximity, window - idle);
+	}
+
+	private synchronized void notifyKindChanged(PKind.Type previous, PKind.Type current) {
+		if (!listeners.isEmpty())
+			BackgroundTimer.execute(() -> {
+				for (var listener : listeners) {
+					try {
+						listener.penKindChanged(previous, current);
+					} catch (RuntimeException e) {
+						logger.warn("Pen kind listener failed: {}", e.getLocalizedMessage(), e);
+					}
+				}
+			});
+	}
+
+	private void notifyProximityChanged(boolean proximity) {
+		for (var listener : listeners) {
+			try {
+				listener.penProximityChanged(proximity);
+			} catch (RuntimeException e) {
+				logger.warn("Pen proximity listener failed: {}", e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+}
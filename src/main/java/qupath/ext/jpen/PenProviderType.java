@@ -0,0 +1,243 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jpen.PenProvider;
+import jpen.provider.osx.CocoaProvider;
+import jpen.provider.wintab.WintabProvider;
+import jpen.provider.xinput.XinputProvider;
+import qupath.ext.jpen.JPenStartupMetrics.Phase;
+import qupath.lib.common.GeneralTools;
+
+/**
+ * The JPen providers used by the extension.
+ * <p>
+ * Provider classes are only referenced from within the methods of each constant,
+ * so that providers that can't work on the current platform are never loaded or initialized.
+ */
+enum PenProviderType {
+
+	/**
+	 * X Input provider for Linux.
+	 */
+	XINPUT(Phase.SET_LOADED_XINPUT) {
+		@Override
+		boolean isSupported() {
+			return GeneralTools.isLinux();
+		}
+
+		@Override
+		Class<?> getProviderClass() {
+			return XinputProvider.class;
+		}
+
+		@Override
+		PenProvider.Constructor createConstructor() {
+			return new XinputProvider.Constructor();
+		}
+	},
+
+	/**
+	 * Wintab provider for Windows.
+	 */
+	WINTAB(Phase.SET_LOADED_WINTAB) {
+		@Override
+		boolean isSupported() {
+			return GeneralTools.isWindows();
+		}
+
+		@Override
+		Class<?> getProviderClass() {
+			return WintabProvider.class;
+		}
+
+		@Override
+		PenProvider.Constructor createConstructor() {
+			return new WintabProvider.Constructor();
+		}
+	},
+
+	/**
+	 * Cocoa provider for macOS.
+	 */
+	COCOA(Phase.SET_LOADED_COCOA) {
+		@Override
+		boolean isSupported() {
+			return GeneralTools.isMac();
+		}
+
+		@Override
+		Class<?> getProviderClass() {
+			return CocoaProvider.class;
+		}
+
+		@Override
+		PenProvider.Constructor createConstructor() {
+			return new CocoaProvider.Constructor();
+		}
+	};
+
+	private static final Logger logger = LoggerFactory.getLogger(PenProviderType.class);
+
+	/**
+	 * Optional comma-separated list of providers to use (e.g. {@code xinput,wintab,cocoa}),
+	 * overriding platform detection.
+	 */
+	static final String PROVIDERS = JPenProperties.PREFIX + "providers";
+
+	private static final String FILE_NAME = "provider.properties";
+	private static final String KEY_LAST_WORKING = "lastWorking";
+
+	private static List<PenProviderType> candidates;
+
+	private final Phase setLoadedPhase;
+
+	PenProviderType(Phase setLoadedPhase) {
+		this.setLoadedPhase = setLoadedPhase;
+	}
+
+	/**
+	 * Query whether this provider can work on the current platform.
+	 * @return
+	 */
+	abstract boolean isSupported();
+
+	/**
+	 * Get the provider class. Calling this causes the class to be loaded.
+	 * @return
+	 */
+	abstract Class<?> getProviderClass();
+
+	/**
+	 * Create a new constructor for this provider. Calling this causes the provider class to be loaded.
+	 * @return
+	 */
+	abstract PenProvider.Constructor createConstructor();
+
+	/**
+	 * Get the startup phase used to time flagging the native library as loaded for this provider.
+	 * @return
+	 */
+	Phase getSetLoadedPhase() {
+		return setLoadedPhase;
+	}
+
+	/**
+	 * Get the providers that should be used in the current environment, in the order they should be tried.
+	 * The last provider that worked is tried first.
+	 * @return an unmodifiable list of providers, which may be empty on unsupported platforms
+	 */
+	static synchronized List<PenProviderType> getCandidates() {
+		if (candidates == null)
+			candidates = List.copyOf(findCandidates());
+		return candidates;
+	}
+
+	private static List<PenProviderType> findCandidates() {
+		List<PenProviderType> list = new ArrayList<>();
+		var requested = JPenProperties.getString(PROVIDERS, null);
+		if (requested != null && !requested.isBlank()) {
+			for (var name : requested.split(",")) {
+				try {
+					var type = PenProviderType.valueOf(name.strip().toUpperCase(Locale.ROOT));
+					if (!list.contains(type))
+						list.add(type);
+				} catch (IllegalArgumentException e) {
+					logger.warn("Unknown JPen provider '{}' in {}", name.strip(), PROVIDERS);
+				}
+			}
+		} else {
+			for (var type : values()) {
+				if (type.isSupported())
+					list.add(type);
+			}
+		}
+		var lastWorking = readLastWorking();
+		if (lastWorking != null && list.remove(lastWorking))
+			list.add(0, lastWorking);
+		logger.debug("JPen provider candidates: {}", list);
+		return list;
+	}
+
+	/**
+	 * Find the type corresponding to a provider constructor.
+	 * @param constructor
+	 * @return the type, or null if the constructor doesn't belong to one of the candidates
+	 */
+	static PenProviderType fromConstructor(PenProvider.Constructor constructor) {
+		for (var type : getCandidates()) {
+			if (constructor.getClass().getEnclosingClass() == type.getProviderClass())
+				return type;
+		}
+		return null;
+	}
+
+	/**
+	 * Remember that a provider worked, so that it can be tried first next time.
+	 * @param type
+	 */
+	static void rememberWorking(PenProviderType type) {
+		if (type == null || type == readLastWorking())
+			return;
+		var path = getPath();
+		try {
+			var props = new Properties();
+			props.setProperty(KEY_LAST_WORKING, type.name());
+			Files.createDirectories(path.getParent());
+			try (var stream = Files.newOutputStream(path)) {
+				props.store(stream, "Last JPen provider that worked");
+			}
+		} catch (IOException e) {
+			logger.debug("Unable to store last working JPen provider: {}", e.getLocalizedMessage());
+		}
+	}
+
+	private static PenProviderType readLastWorking() {
+		var path = getPath();
+		if (!Files.isRegularFile(path))
+			return null;
+		try (var stream = Files.newInputStream(path)) {
+			var props = new Properties();
+			props.load(stream);
+			var name = props.getProperty(KEY_LAST_WORKING);
+			return name == null ? null : PenProviderType.valueOf(name);
+		} catch (IOException | IllegalArgumentException e) {
+			logger.debug("Unable to read last working JPen provider: {}", e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	private static Path getPath() {
+		return NativeLibraryCache.getDefaultCacheDirectory().resolveSibling(FILE_NAME);
+	}
+
+}
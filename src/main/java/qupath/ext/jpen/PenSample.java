@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import jpen.PButton;
+import jpen.PKind;
+
+/**
+ * Immutable record of the pen state at the end of one JPen cycle, as delivered by {@link PenSamplePublisher}.
+ * <p>
+ * Pressure values have both the pressure filter and the pressure curve applied.
+ */
+public final class PenSample {
+
+	private static final PKind.Type[] KIND_TYPES = PKind.Type.values();
+
+	private final long timestamp;
+	private final float x;
+	private final float y;
+	private final float pressure;
+	private final float tiltX;
+	private final float tiltY;
+	private final float rotation;
+	private final float sidePressure;
+	private final int kind;
+	private final int buttons;
+
+	PenSample(PenState state, float pressure) {
+		this.timestamp = state.timestamp;
+		this.x = state.x;
+		this.y = state.y;
+		this.pressure = pressure;
+		this.tiltX = state.tiltX;
+		this.tiltY = state.tiltY;
+		this.rotation = state.rotation;
+		this.sidePressure = state.sidePressure;
+		this.kind = state.kind;
+		this.buttons = state.buttons;
+	}
+
+	/**
+	 * Get the time of the sample.
+	 * @return the timestamp from {@link System#nanoTime()}
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get the x location, in screen coordinates.
+	 * @return
+	 */
+	public float getX() {
+		return x;
+	}
+
+	/**
+	 * Get the y location, in screen coordinates.
+	 * @return
+	 */
+	public float getY() {
+		return y;
+	}
+
+	/**
+	 * Get the pressure, between 0 and 1.
+	 * @return
+	 */
+	public float getPressure() {
+		return pressure;
+	}
+
+	/**
+	 * Get the tilt along the x axis, in radians.
+	 * @return
+	 */
+	public float getTiltX() {
+		return tiltX;
+	}
+
+	/**
+	 * Get the tilt along the y axis, in radians.
+	 * @return
+	 */
+	public float getTiltY() {
+		return tiltY;
+	}
+
+	/**
+	 * Get the rotation around the pen's own axis, in radians.
+	 * @return
+	 */
+	public float getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Get the side (barrel or tangential) pressure.
+	 * @return
+	 */
+	public float getSidePressure() {
+		return sidePressure;
+	}
+
+	/**
+	 * Get the type of the pen.
+	 * @return the type, or null if unknown
+	 */
+	public PKind.Type getKind() {
+		return kind < 0 || kind >= KIND_TYPES.length ? null : KIND_TYPES[kind];
+	}
+
+	/**
+	 * Get a bitmask of the pressed buttons, using the ordinals of {@link PButton.Type}.
+	 * @return
+	 */
+	public int getButtons() {
+		return buttons;
+	}
+
+	/**
+	 * Query whether a button is pressed.
+	 * @param button
+	 * @return
+	 */
+	public boolean isButtonPressed(PButton.Type button) {
+		return (buttons & (1 << button.ordinal())) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return "PenSample[t=" + timestamp + ", kind=" + getKind() + ", x=" + x + ", y=" + y + ", pressure=" + pressure
+				+ ", tilt=(" + tiltX + ", " + tiltY + "), rotation=" + rotation + ", sidePressure=" + sidePressure
+				+ ", buttons=" + Integer.toBinaryString(buttons) + "]";
+	}
+
+}
@@ -0,0 +1,340 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Fixed-capacity ring buffer of recent pen samples, stored in primitive arrays.
+ * <p>
+ * Samples are appended by a single writer thread (JPen's event thread) without allocation.
+ * Any thread can copy the samples recorded since a given time using {@link #readSince(long, Samples)};
+ * this is lock-free, and readers never see a sample that was overwritten while it was being copied.
+ * <p>
+ * Timestamps use the {@link System#nanoTime()} clock.
+ */
+public final class PenSampleBuffer {
+
+	private static final VarHandle CLAIMED;
+	private static final VarHandle PUBLISHED;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			CLAIMED = lookup.findVarHandle(PenSampleBuffer.class, "claimed", long.class);
+			PUBLISHED = lookup.findVarHandle(PenSampleBuffer.class, "published", long.class);
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final int capacity;
+	private final int mask;
+
+	private final long[] time;
+	private final float[] x;
+	private final float[] y;
+	private final float[] pressure;
+	private final float[] tiltX;
+	private final float[] tiltY;
+	private final int[] kind;
+
+	// Number of samples the writer has started to write
+	@SuppressWarnings("unused") // Accessed via CLAIMED
+	private long claimed;
+
+	// Number of samples that have been completely written
+	@SuppressWarnings("unused") // Accessed via PUBLISHED
+	private long published;
+
+	/**
+	 * Create a buffer.
+	 * @param capacity the maximum number of samples to retain; this is rounded up to a power of 2
+	 */
+	PenSampleBuffer(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be > 0");
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.time = new long[this.capacity];
+		this.x = new float[this.capacity];
+		this.y = new float[this.capacity];
+		this.pressure = new float[this.capacity];
+		this.tiltX = new float[this.capacity];
+		this.tiltY = new float[this.capacity];
+		this.kind = new int[this.capacity];
+	}
+
+	/**
+	 * Get the maximum number of samples retained.
+	 * @return
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the total number of samples that have been written since the buffer was created.
+	 * @return
+	 */
+	public long getTotalCount() {
+		return (long)PUBLISHED.getAcquire(this);
+	}
+
+	/**
+	 * Append a sample. This must only be called from the writer thread.
+	 * @param timeNanos timestamp, from {@link System#nanoTime()}
+	 * @param x x location on screen
+	 * @param y y location on screen
+	 * @param pressure pressure, usually between 0 and 1
+	 * @param tiltX tilt in the x direction
+	 * @param tiltY tilt in the y direction
+	 * @param kind ordinal of the {@link jpen.PKind.Type}
+	 */
+	void append(long timeNanos, float x, float y, float pressure, float tiltX, float tiltY, int kind) {
+		long n = (long)CLAIMED.getOpaque(this);
+		// Announce that the slot is about to be overwritten before touching it
+		CLAIMED.setOpaque(this, n + 1);
+		VarHandle.storeStoreFence();
+		int i = (int)(n & mask);
+		this.time[i] = timeNanos;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.pressure[i] = pressure;
+		this.tiltX[i] = tiltX;
+		this.tiltY[i] = tiltY;
+		this.kind[i] = kind;
+		PUBLISHED.setRelease(this, n + 1);
+	}
+
+	/**
+	 * Copy all samples with a timestamp strictly after the specified time, oldest first.
+	 * If there are more samples than the output can hold, the most recent samples are retained.
+	 * @param sinceNanos time from {@link System#nanoTime()}; use {@link Long#MIN_VALUE} to read all retained samples
+	 * @param output object to receive the samples; this is reused, and its previous contents are discarded
+	 * @return the number of samples copied
+	 */
+	public int readSince(long sinceNanos, Samples output) {
+		while (true) {
+			long end = (long)PUBLISHED.getAcquire(this);
+			long start = Math.max(0L, end - capacity);
+			// Find the first sample after the requested time, by scanning back from the most recent
+			long first = end;
+			while (first > start && time[(int)((first - 1) & mask)] > sinceNanos)
+				first--;
+			long from = Math.max(first, end - output.capacity());
+			int count = (int)(end - from);
+			for (int k = 0; k < count; k++) {
+				int i = (int)((from + k) & mask);
+				output.time[k] = time[i];
+				output.x[k] = x[i];
+				output.y[k] = y[i];
+				output.pressure[k] = pressure[i];
+				output.tiltX[k] = tiltX[i];
+				output.tiltY[k] = tiltY[i];
+				output.kind[k] = kind[i];
+			}
+			VarHandle.loadLoadFence();
+			// Any sample older than this may have been overwritten while we were copying it
+			long oldestValid = (long)CLAIMED.getOpaque(this) - capacity;
+			if (from >= oldestValid) {
+				output.size = count;
+				return count;
+			}
+			// The writer lapped us - try again with fresh indices
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Get the pressure at a specified time, interpolated linearly between the samples either side.
+	 * <p>
+	 * If the time is after the most recent sample, the pressure is extrapolated from the last two samples -
+	 * but by no more than {@code maxExtrapolationNanos}, after which the pressure is held constant.
+	 * If the time is before the oldest retained sample, the pressure of that sample is returned.
+	 * The result is always clamped to the range 0-1.
+	 * @param timeNanos time from {@link System#nanoTime()}
+	 * @param maxExtrapolationNanos maximum time to extrapolate beyond the most recent sample; use 0 to disable extrapolation
+	 * @param fallback value to return if the buffer is empty
+	 * @return the pressure at the requested time
+	 */
+	public float getPressureAt(long timeNanos, long maxExtrapolationNanos, float fallback) {
+		while (true) {
+			long end = (long)PUBLISHED.getAcquire(this);
+			if (end == 0L)
+				return fallback;
+			// Skip the oldest slot, since the writer may be about to overwrite it
+			long start = Math.max(0L, end - capacity + 1);
+			// Binary search for the last sample at or before the requested time
+			long lo = start, hi = end - 1;
+			if (time[(int)(lo & mask)] > timeNanos) {
+				hi = lo - 1;
+			} else {
+				while (lo < hi) {
+					long mid = (lo + hi + 1) >>> 1;
+					if (time[(int)(mid & mask)] <= timeNanos)
+						lo = mid;
+					else
+						hi = mid - 1;
+				}
+			}
+			float result;
+			if (hi < start) {
+				// Before the oldest sample
+				result = pressure[(int)(start & mask)];
+			} else if (hi == end - 1) {
+				// After the most recent sample - extrapolate if we can
+				int i1 = (int)(hi & mask);
+				result = pressure[i1];
+				if (maxExtrapolationNanos > 0 && hi > start) {
+					int i0 = (int)((hi - 1) & mask);
+					long dtSamples = time[i1] - time[i0];
+					long dt = Math.min(timeNanos - time[i1], maxExtrapolationNanos);
+					if (dtSamples > 0)
+						result += (pressure[i1] - pressure[i0]) * ((float)dt / dtSamples);
+				}
+			} else {
+				int i0 = (int)(hi & mask);
+				int i1 = (int)((hi + 1) & mask);
+				long dtSamples = time[i1] - time[i0];
+				result = pressure[i0];
+				if (dtSamples > 0)
+					result += (pressure[i1] - pressure[i0]) * ((float)(timeNanos - time[i0]) / dtSamples);
+			}
+			VarHandle.loadLoadFence();
+			// The binary search may have touched any retained sample, so require that none were overwritten
+			if (start >= (long)CLAIMED.getOpaque(this) - capacity)
+				return Math.max(0f, Math.min(1f, result));
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Reusable holder for samples copied from a {@link PenSampleBuffer}.
+	 */
+	public static final class Samples {
+
+		private final long[] time;
+		private final float[] x;
+		private final float[] y;
+		private final float[] pressure;
+		private final float[] tiltX;
+		private final float[] tiltY;
+		private final int[] kind;
+		private int size;
+
+		/**
+		 * Create a holder for up to the specified number of samples.
+		 * @param capacity
+		 */
+		public Samples(int capacity) {
+			this.time = new long[capacity];
+			this.x = new float[capacity];
+			this.y = new float[capacity];
+			this.pressure = new float[capacity];
+			this.tiltX = new float[capacity];
+			this.tiltY = new float[capacity];
+			this.kind = new int[capacity];
+		}
+
+		/**
+		 * Get the maximum number of samples this can hold.
+		 * @return
+		 */
+		public int capacity() {
+			return time.length;
+		}
+
+		/**
+		 * Get the number of samples from the last read.
+		 * @return
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Get the timestamp of a sample, from {@link System#nanoTime()}.
+		 * @param i index of the sample, from 0 (oldest) to {@code size() - 1} (most recent)
+		 * @return
+		 */
+		public long getTime(int i) {
+			return time[i];
+		}
+
+		/**
+		 * Get the x location of a sample on screen.
+		 * @param i
+		 * @return
+		 */
+		public float getX(int i) {
+			return x[i];
+		}
+
+		/**
+		 * Get the y location of a sample on screen.
+		 * @param i
+		 * @return
+		 */
+		public float getY(int i) {
+			return y[i];
+		}
+
+		/**
+		 * Get the pressure of a sample.
+		 * @param i
+		 * @return
+		 */
+		public float getPressure(int i) {
+			return pressure[i];
+		}
+
+		/**
+		 * Get the tilt in the x direction of a sample.
+		 * @param i
+		 * @return
+		 */
+		public float getTiltX(int i) {
+			return tiltX[i];
+		}
+
+		/**
+		 * Get the tilt in the y direction of a sample.
+		 * @param i
+		 * @return
+		 */
+		public float getTiltY(int i) {
+			return tiltY[i];
+		}
+
+		/**
+		 * Get the kind of a sample, as the ordinal of a {@link jpen.PKind.Type}.
+		 * @param i
+		 * @return
+		 */
+		public int getKind(int i) {
+			return kind[i];
+		}
+
+	}
+
+}
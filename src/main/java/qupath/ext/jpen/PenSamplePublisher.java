@@ -0,0 +1,344 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Flow.Publisher} of pen samples, with one sample for every JPen cycle in which input was received.
+ * <p>
+ * Each subscriber has its own bounded buffer, and receives samples on a background thread, so that a slow subscriber
+ * neither delays JPen nor other subscribers. What happens when a buffer is full is determined by an {@link OverflowPolicy}.
+ * <p>
+ * Samples are only created while there is at least one subscriber.
+ */
+public final class PenSamplePublisher implements Flow.Publisher<PenSample> {
+
+	private static final Logger logger = LoggerFactory.getLogger(PenSamplePublisher.class);
+
+	/**
+	 * Default number of samples buffered for each subscriber.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 256;
+
+	/**
+	 * Maximum time the producer waits for space with {@link OverflowPolicy#BLOCK}, to avoid stalling JPen indefinitely.
+	 */
+	private static final long MAX_BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * Behavior when a subscriber's buffer is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Discard the oldest buffered sample to make room for the new one.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Replace the newest buffered sample with the new one, so that the subscriber always receives the latest state.
+		 */
+		CONFLATE_LATEST,
+		/**
+		 * Make the producer wait until there is space, dropping the new sample if no space becomes available within 100 ms.
+		 * <p>
+		 * <b>Use with care:</b> the producer is JPen's own thread, so while this subscriber's buffer is full
+		 * <i>all</i> pen input is stalled - including QuPath's drawing and every other subscriber - for up to 100 ms per sample.
+		 * This is only suitable for short recordings where losing samples is worse than lagging input.
+		 */
+		BLOCK
+	}
+
+	private static class ExecutorHolder {
+		private static final AtomicInteger COUNT = new AtomicInteger();
+		private static final Executor EXECUTOR = Executors.newCachedThreadPool(r -> {
+			var thread = new Thread(r, "jpen-stream-" + COUNT.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private final List<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private volatile boolean closed = false;
+
+	PenSamplePublisher() {}
+
+	/**
+	 * Subscribe with the default buffer size and {@link OverflowPolicy#DROP_OLDEST}.
+	 * @throws IllegalStateException if the subscriber is already subscribed
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super PenSample> subscriber) {
+		subscribe(subscriber, DEFAULT_BUFFER_SIZE, OverflowPolicy.DROP_OLDEST);
+	}
+
+	/**
+	 * Subscribe with a specified buffer size and overflow policy.
+	 * @param subscriber the subscriber
+	 * @param bufferSize maximum number of samples buffered for this subscriber
+	 * @param policy what to do when the buffer is full
+	 * @throws IllegalArgumentException if the buffer size is not positive
+	 * @throws IllegalStateException if the subscriber is already subscribed
+	 */
+	public void subscribe(Flow.Subscriber<? super PenSample> subscriber, int bufferSize, OverflowPolicy policy) throws IllegalArgumentException, IllegalStateException {
+		Objects.requireNonNull(subscriber, "Subscriber must not be null");
+		Objects.requireNonNull(policy, "Overflow policy must not be null");
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("Buffer size must be > 0, but was " + bufferSize);
+		// Signaling an error here could overlap with signals from the existing subscription, so fail fast instead
+		for (var existing : subscriptions) {
+			if (existing.subscriber == subscriber)
+				throw new IllegalStateException("Subscriber is already subscribed");
+		}
+		var subscription = new BufferedSubscription(subscriber, bufferSize, policy);
+		subscriptions.add(subscription);
+		subscription.start();
+		if (closed)
+			subscription.complete();
+	}
+
+	/**
+	 * Query whether there are any subscribers, and therefore whether samples need to be created.
+	 * @return
+	 */
+	public boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * Get the number of current subscribers.
+	 * @return
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Get the total number of samples that were discarded (or replaced) because a subscriber's buffer was full.
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Deliver a sample to all subscribers. This is called from JPen's thread.
+	 * @param sample
+	 */
+	void submit(PenSample sample) {
+		if (closed)
+			return;
+		for (var subscription : subscriptions)
+			subscription.offer(sample);
+	}
+
+	/**
+	 * Complete all subscriptions because QuPath is shutting down.
+	 * Any later subscribers are completed immediately.
+	 */
+	void close() {
+		closed = true;
+		for (var subscription : subscriptions)
+			subscription.complete();
+	}
+
+
+	private class BufferedSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super PenSample> subscriber;
+		private final OverflowPolicy policy;
+
+		// Ring buffer, guarded by this
+		private final PenSample[] buffer;
+		private int head = 0;
+		private int size = 0;
+
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled = false;
+		private volatile boolean completed = false;
+		private volatile Throwable pendingError;
+		private boolean subscribed = false;
+
+		BufferedSubscription(Flow.Subscriber<? super PenSample> subscriber, int bufferSize, OverflowPolicy policy) {
+			this.subscriber = subscriber;
+			this.policy = policy;
+			this.buffer = new PenSample[bufferSize];
+		}
+
+		void start() {
+			schedule();
+		}
+
+		void offer(PenSample sample) {
+			if (cancelled || completed)
+				return;
+			synchronized (this) {
+				if (size == buffer.length) {
+					switch (policy) {
+					case DROP_OLDEST:
+						buffer[head] = null;
+						head = (head + 1) % buffer.length;
+						size--;
+						droppedCount.incrementAndGet();
+						break;
+					case CONFLATE_LATEST:
+						buffer[(head + size - 1) % buffer.length] = sample;
+						droppedCount.incrementAndGet();
+						schedule();
+						return;
+					case BLOCK:
+						if (!awaitSpace()) {
+							droppedCount.incrementAndGet();
+							return;
+						}
+						break;
+					}
+				}
+				buffer[(head + size) % buffer.length] = sample;
+				size++;
+			}
+			schedule();
+		}
+
+		/**
+		 * Wait for space in the buffer, which must be full. Must be called while synchronized.
+		 * @return true if space became available, false if the wait timed out or the subscription ended
+		 */
+		private boolean awaitSpace() {
+			long deadline = System.nanoTime() + MAX_BLOCK_NANOS;
+			try {
+				while (size == buffer.length && !cancelled) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+						return false;
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return !cancelled;
+		}
+
+		private synchronized PenSample poll() {
+			if (size == 0)
+				return null;
+			var sample = buffer[head];
+			buffer[head] = null;
+			head = (head + 1) % buffer.length;
+			size--;
+			if (policy == OverflowPolicy.BLOCK)
+				notifyAll();
+			return sample;
+		}
+
+		private synchronized boolean isEmpty() {
+			return size == 0;
+		}
+
+		void complete() {
+			completed = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0)
+				ExecutorHolder.EXECUTOR.execute(this::drain);
+		}
+
+		private void drain() {
+			int missed = 1;
+			do {
+				if (!subscribed) {
+					subscribed = true;
+					try {
+						subscriber.onSubscribe(this);
+					} catch (Throwable t) {
+						fail(t);
+					}
+				}
+				while (!cancelled) {
+					var error = pendingError;
+					if (error != null) {
+						cancel();
+						subscriber.onError(error);
+						break;
+					}
+					if (demand.get() <= 0)
+						break;
+					var sample = poll();
+					if (sample == null)
+						break;
+					demand.decrementAndGet();
+					try {
+						subscriber.onNext(sample);
+					} catch (Throwable t) {
+						fail(t);
+					}
+				}
+				if (completed && !cancelled && isEmpty()) {
+					cancel();
+					subscriber.onComplete();
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void fail(Throwable t) {
+			logger.debug("Pen sample subscriber failed: {}", t.getLocalizedMessage());
+			if (pendingError == null)
+				pendingError = t;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException("Requested " + n + " samples, but must request > 0"));
+			} else
+				demand.accumulateAndGet(n, (a, b) -> Long.MAX_VALUE - a < b ? Long.MAX_VALUE : a + b);
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,195 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import jpen.PButton;
+import jpen.PKind;
+
+/**
+ * Mutable holder for the state of all pen axes at one point in time.
+ * <p>
+ * Instances are filled by {@link ExtendedPenInputManager#getState(PenState)}, so that all axes can be read
+ * consistently in a single call. Callers are encouraged to reuse an instance rather than creating one for every read.
+ * Instances are not thread-safe.
+ */
+public final class PenState {
+
+	/**
+	 * Value used for the kind when no kind is known.
+	 */
+	public static final int KIND_NONE = -1;
+
+	private static final PKind.Type[] KIND_TYPES = PKind.Type.values();
+
+	float x;
+	float y;
+	float pressure;
+	float tiltX;
+	float tiltY;
+	float rotation;
+	float sidePressure;
+	int kind = KIND_NONE;
+	int buttons;
+	long timestamp;
+	boolean recent;
+
+	/**
+	 * Copy all values from another state.
+	 * @param other
+	 */
+	void set(PenState other) {
+		x = other.x;
+		y = other.y;
+		pressure = other.pressure;
+		tiltX = other.tiltX;
+		tiltY = other.tiltY;
+		rotation = other.rotation;
+		sidePressure = other.sidePressure;
+		kind = other.kind;
+		buttons = other.buttons;
+		timestamp = other.timestamp;
+		recent = other.recent;
+	}
+
+	/**
+	 * Get the x location, in screen coordinates.
+	 * @return
+	 */
+	public float getX() {
+		return x;
+	}
+
+	/**
+	 * Get the y location, in screen coordinates.
+	 * @return
+	 */
+	public float getY() {
+		return y;
+	}
+
+	/**
+	 * Get the pressure, between 0 and 1.
+	 * When filled by {@link ExtendedPenInputManager#getState(PenState)}, this has the pressure curve applied.
+	 * @return
+	 */
+	public float getPressure() {
+		return pressure;
+	}
+
+	/**
+	 * Get the tilt along the x axis, in radians.
+	 * @return
+	 */
+	public float getTiltX() {
+		return tiltX;
+	}
+
+	/**
+	 * Get the tilt along the y axis, in radians.
+	 * @return
+	 */
+	public float getTiltY() {
+		return tiltY;
+	}
+
+	/**
+	 * Get the rotation around the pen's own axis, in radians.
+	 * @return
+	 */
+	public float getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Get the side (barrel or tangential) pressure, e.g. from an airbrush wheel.
+	 * @return
+	 */
+	public float getSidePressure() {
+		return sidePressure;
+	}
+
+	/**
+	 * Get the ordinal of the {@link PKind.Type} of the pen.
+	 * @return the ordinal, or {@link #KIND_NONE} if unknown
+	 */
+	public int getKindOrdinal() {
+		return kind;
+	}
+
+	/**
+	 * Get the type of the pen.
+	 * @return the type, or null if unknown
+	 */
+	public PKind.Type getKind() {
+		return kind < 0 || kind >= KIND_TYPES.length ? null : KIND_TYPES[kind];
+	}
+
+	/**
+	 * Query whether the stylus or eraser is being used (rather than a mouse or other cursor).
+	 * @return
+	 */
+	public boolean isStylusOrEraser() {
+		return kind == PKind.Type.STYLUS.ordinal() || kind == PKind.Type.ERASER.ordinal();
+	}
+
+	/**
+	 * Get a bitmask of the pressed buttons, using the ordinals of {@link PButton.Type}.
+	 * @return
+	 */
+	public int getButtons() {
+		return buttons;
+	}
+
+	/**
+	 * Query whether a button is pressed.
+	 * @param button
+	 * @return
+	 */
+	public boolean isButtonPressed(PButton.Type button) {
+		return (buttons & (1 << button.ordinal())) != 0;
+	}
+
+	/**
+	 * Get the time of the most recent pen input.
+	 * @return the timestamp from {@link System#nanoTime()}
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Query whether the state reflects recent input. If not, the values may be out of date
+	 * (e.g. because the pen has been moved away from the tablet).
+	 * @return
+	 */
+	public boolean isRecent() {
+		return recent;
+	}
+
+	@Override
+	public String toString() {
+		return "PenState[kind=" + getKind() + ", x=" + x + ", y=" + y + ", pressure=" + pressure
+				+ ", tilt=(" + tiltX + ", " + tiltY + "), rotation=" + rotation + ", sidePressure=" + sidePressure
+				+ ", buttons=" + Integer.toBinaryString(buttons) + ", timestamp=" + timestamp + ", recent=" + recent + "]";
+	}
+
+}
@@ -0,0 +1,447 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanPropertyBase;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoublePropertyBase;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerPropertyBase;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectPropertyBase;
+import javafx.beans.value.ChangeListener;
+import jpen.PKind;
+
+/**
+ * Read-only JavaFX properties reflecting the pen state, updated on the JavaFX thread at most once per pulse.
+ * <p>
+ * However fast the tablet reports, these properties change no more often than the screen is redrawn,
+ * so they can be bound to the UI (e.g. a pressure indicator) without flooding the JavaFX event queue.
+ * <p>
+ * The properties are only updated while they have listeners (including bindings) and the pen is in use:
+ * an {@link AnimationTimer} is started when new input arrives, and stopped again once there has been no input for a few frames
+ * or nothing is observing the properties, so that it doesn't force pulses when idle.
+ * Values read without a listener may therefore be out of date.
+ */
+public final class PenStateProperties {
+
+	/**
+	 * Number of consecutive pulses without new input before the timer is stopped.
+	 */
+	private static final int IDLE_PULSES = 30;
+
+	private final ExtendedPenInputManager manager;
+
+	private final DoubleValue pressure = new DoubleValue("pressure", 0.0);
+	private final ObjectValue<PKind.Type> kind = new ObjectValue<>("kind", null);
+	private final BooleanValue proximity = new BooleanValue("proximity", false);
+	private final IntegerValue buttons = new IntegerValue("buttons", 0);
+
+	// Set by JPen's thread whenever there is a new commit
+	private volatile boolean dirty = false;
+	private volatile boolean running = false;
+	private final AtomicBoolean startRequested = new AtomicBoolean(false);
+	// Read by JPen's thread, so that nothing is scheduled while the properties are unobserved
+	private volatile boolean observed = false;
+
+	// Only accessed from the JavaFX thread
+	private final PenState state = new PenState();
+	private final List<Observer> observers = new ArrayList<>();
+	private AnimationTimer timer;
+	private int idlePulses = 0;
+
+	PenStateProperties(ExtendedPenInputManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Notify that a new pen state has been committed. This is called from JPen's thread,
+	 * and only involves a call to the JavaFX thread if the properties are observed and aren't already being updated.
+	 */
+	void requestUpdate() {
+		dirty = true;
+		if (observed && !running && startRequested.compareAndSet(false, true))
+			Platform.runLater(this::start);
+	}
+
+	private void start() {
+		startRequested.set(false);
+		if (running || !observed)
+			return;
+		if (timer == null) {
+			timer = new AnimationTimer() {
+				@Override
+				public void handle(long now) {
+					update();
+				}
+			};
+		}
+		running = true;
+		idlePulses = 0;
+		timer.start();
+	}
+
+	private void stop() {
+		timer.stop();
+		running = false;
+	}
+
+	private void update() {
+		if (!observed) {
+			stop();
+			return;
+		}
+		boolean changed = dirty;
+		dirty = false;
+		boolean inProximity = refresh();
+		if (changed || inProximity) {
+			idlePulses = 0;
+			return;
+		}
+		if (++idlePulses < IDLE_PULSES)
+			return;
+		stop();
+		// Don't miss a commit that arrived after we checked, but before we stopped
+		if (dirty)
+			start();
+	}
+
+	/**
+	 * Set the properties from the current pen state.
+	 * @return true if the pen is in proximity
+	 */
+	private boolean refresh() {
+		manager.getState(state);
+		boolean inProximity = manager.isInProximity();
+		pressure.set(inProximity ? state.getPressure() : 0.0);
+		kind.set(state.getKind());
+		proximity.set(inProximity);
+		buttons.set(state.getButtons());
+		return inProximity;
+	}
+
+	private void addObserver(Observable property, Object listener) {
+		observers.add(new Observer(property, listener));
+		if (observed)
+			return;
+		observed = true;
+		// The values weren't updated while unobserved
+		if (Platform.isFxApplicationThread()) {
+			refresh();
+			start();
+		} else
+			requestUpdate();
+	}
+
+	private void removeObserver(Observable property, Object listener) {
+		// The timer stops itself on the next pulse once nothing is observed
+		if (observers.remove(new Observer(property, listener)))
+			observed = !observers.isEmpty();
+	}
+
+	/**
+	 * Pressure of the stylus or eraser, with the pressure curve applied, or 0 if it isn't in proximity.
+	 * @return
+	 */
+	public ReadOnlyDoubleProperty pressureProperty() {
+		return pressure;
+	}
+
+	/**
+	 * Type of the pen that was most recently used, or null if unknown.
+	 * @return
+	 */
+	public ReadOnlyObjectProperty<PKind.Type> kindProperty() {
+		return kind;
+	}
+
+	/**
+	 * Whether a stylus or eraser is currently in proximity of the tablet (as indicated by recent input).
+	 * This matches {@link ExtendedPenInputManager#isInProximity()}, and so changes along with
+	 * {@link PenKindListener#penProximityChanged(boolean)}.
+	 * @return
+	 */
+	public ReadOnlyBooleanProperty proximityProperty() {
+		return proximity;
+	}
+
+	/**
+	 * Bitmask of the pressed pen buttons, using the ordinals of {@link jpen.PButton.Type}.
+	 * @return
+	 */
+	public ReadOnlyIntegerProperty buttonsProperty() {
+		return buttons;
+	}
+
+	/**
+	 * A listener added to one of the properties.
+	 */
+	private record Observer(Observable property, Object listener) {}
+
+	/*
+	 * The properties below are only set on the JavaFX thread, and notify the outer class whenever
+	 * listeners are added or removed.
+	 */
+
+	private final class DoubleValue extends ReadOnlyDoublePropertyBase {
+
+		private final String name;
+		private double value;
+
+		private DoubleValue(String name, double value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		private void set(double newValue) {
+			if (Double.compare(value, newValue) == 0)
+				return;
+			value = newValue;
+			fireValueChangedEvent();
+		}
+
+		@Override
+		public double get() {
+			return value;
+		}
+
+		@Override
+		public Object getBean() {
+			return PenStateProperties.this;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void addListener(InvalidationListener listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(InvalidationListener listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+		@Override
+		public void addListener(ChangeListener<? super Number> listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(ChangeListener<? super Number> listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+	}
+
+	private final class IntegerValue extends ReadOnlyIntegerPropertyBase {
+
+		private final String name;
+		private int value;
+
+		private IntegerValue(String name, int value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		private void set(int newValue) {
+			if (value == newValue)
+				return;
+			value = newValue;
+			fireValueChangedEvent();
+		}
+
+		@Override
+		public int get() {
+			return value;
+		}
+
+		@Override
+		public Object getBean() {
+			return PenStateProperties.this;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void addListener(InvalidationListener listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(InvalidationListener listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+		@Override
+		public void addListener(ChangeListener<? super Number> listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(ChangeListener<? super Number> listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+	}
+
+	private final class BooleanValue extends ReadOnlyBooleanPropertyBase {
+
+		private final String name;
+		private boolean value;
+
+		private BooleanValue(String name, boolean value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		private void set(boolean newValue) {
+			if (value == newValue)
+				return;
+			value = newValue;
+			fireValueChangedEvent();
+		}
+
+		@Override
+		public boolean get() {
+			return value;
+		}
+
+		@Override
+		public Object getBean() {
+			return PenStateProperties.this;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void addListener(InvalidationListener listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(InvalidationListener listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+		@Override
+		public void addListener(ChangeListener<? super Boolean> listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(ChangeListener<? super Boolean> listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+	}
+
+	private final class ObjectValue<T> extends ReadOnlyObjectPropertyBase<T> {
+
+		private final String name;
+		private T value;
+
+		private ObjectValue(String name, T value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		private void set(T newValue) {
+			if (Objects.equals(value, newValue))
+				return;
+			value = newValue;
+			fireValueChangedEvent();
+		}
+
+		@Override
+		public T get() {
+			return value;
+		}
+
+		@Override
+		public Object getBean() {
+			return PenStateProperties.this;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void addListener(InvalidationListener listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(InvalidationListener listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+		@Override
+		public void addListener(ChangeListener<? super T> listener) {
+			super.addListener(listener);
+			addObserver(this, listener);
+		}
+
+		@Override
+		public void removeListener(ChangeListener<? super T> listener) {
+			super.removeListener(listener);
+			removeObserver(this, listener);
+		}
+
+	}
+
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Latest pen state, published by a single writer thread and readable from any thread without locks or allocation.
+ * <p>
+ * This is implemented as a seqlock: the writer increments a sequence number before and after updating the values,
+ * and readers retry if the sequence number was odd (a write in progress) or changed while they were reading.
+ * <p>
+ * Only one thread may call {@link #publish(PenState)} - in practice, this is JPen's event thread.
+ */
+final class PenStateSnapshot {
+
+	private static final VarHandle SEQUENCE;
+
+	static {
+		try {
+			SEQUENCE = MethodHandles.lookup().findVarHandle(PenStateSnapshot.class, "sequence", long.class);
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@SuppressWarnings("unused") // Accessed via SEQUENCE
+	private long sequence;
+
+	private final PenState state = new PenState();
+
+	/**
+	 * Publish a new state. This must only be called from the writer thread.
+	 * @param newState the state to copy
+	 */
+	void publish(PenState newState) {
+		long seq = (long)SEQUENCE.getOpaque(this);
+		SEQUENCE.setOpaque(this, seq + 1);
+		VarHandle.storeStoreFence();
+		state.set(newState);
+		SEQUENCE.setRelease(this, seq + 2);
+	}
+
+	/**
+	 * Read a consistent copy of the latest state.
+	 * @param sample object to hold the state; this is usually reused by the calling thread
+	 * @return the sample that was passed as a parameter
+	 */
+	PenState read(PenState sample) {
+		while (true) {
+			long seq = (long)SEQUENCE.getAcquire(this);
+			if ((seq & 1L) != 0L) {
+				Thread.onSpinWait();
+				continue;
+			}
+			sample.set(state);
+			VarHandle.loadLoadFence();
+			if ((long)SEQUENCE.getOpaque(this) == seq)
+				return sample;
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Transfer curve applied to raw pen pressure.
+ * <p>
+ * A curve is defined by a small number of parameters, applied in this order:
+ * <ol>
+ *   <li><b>deadZone</b> - raw pressure at or below this value is treated as zero, and the remainder is rescaled to 0-1</li>
+ *   <li><b>gamma</b> - the pressure is raised to this power; values below 1 make light strokes heavier</li>
+ *   <li><b>contrast</b> - blends towards (positive) or away from (negative) an S-curve, in the range -1 to 1</li>
+ *   <li><b>min</b> and <b>max</b> - the output is mapped into this range</li>
+ * </ol>
+ * The definition is compiled into a dense lookup table when the curve is created, so that
+ * {@link #apply(double)} needs only a couple of array reads and no allocation.
+ * <p>
+ * Curves are immutable. They can be written as, and parsed from, a specification such as
+ * {@code "gamma=0.7;contrast=0;deadZone=0.02;min=0.1;max=1"}; any parameter that is omitted takes its default value.
+ */
+public final class PressureCurve {
+
+	private static final int STEPS = 1024;
+
+	/**
+	 * Identity curve, which returns the raw pressure unchanged.
+	 */
+	public static final PressureCurve LINEAR = new PressureCurve(1.0, 0.0, 0.0, 0.0, 1.0);
+
+	private final double gamma;
+	private final double contrast;
+	private final double deadZone;
+	private final double min;
+	private final double max;
+
+	private final float[] lut = new float[STEPS + 1];
+
+	private PressureCurve(double gamma, double contrast, double deadZone, double min, double max) {
+		this.gamma = gamma;
+		this.contrast = contrast;
+		this.deadZone = deadZone;
+		this.min = min;
+		this.max = max;
+		for (int i = 0; i <= STEPS; i++)
+			lut[i] = (float)evaluate((double)i / STEPS);
+	}
+
+	/**
+	 * Create a pressure curve.
+	 * @param gamma exponent applied to the pressure; must be &gt; 0
+	 * @param contrast S-curve strength, from -1 to 1 (0 for none)
+	 * @param deadZone raw pressure below which the output is {@code min}, from 0 to &lt; 1
+	 * @param min output for zero pressure, from 0 to 1
+	 * @param max output for full pressure, from 0 to 1
+	 * @return the curve
+	 * @throws IllegalArgumentException if any parameter is out of range
+	 */
+	public static PressureCurve create(double gamma, double contrast, double deadZone, double min, double max) throws IllegalArgumentException {
+		if (!(gamma > 0) || !Double.isFinite(gamma))
+			throw new IllegalArgumentException("Gamma must be > 0, but was " + gamma);
+		if (!(contrast >= -1 && contrast <= 1))
+			throw new IllegalArgumentException("Contrast must be between -1 and 1, but was " + contrast);
+		if (!(deadZone >= 0 && deadZone < 1))
+			throw new IllegalArgumentException("Dead zone must be >= 0 and < 1, but was " + deadZone);
+		if (!(min >= 0 && min <= 1) || !(max >= 0 && max <= 1))
+			throw new IllegalArgumentException("Min and max must be between 0 and 1, but were " + min + " and " + max);
+		return new PressureCurve(gamma, contrast, deadZone, min, max);
+	}
+
+	/**
+	 * Parse a curve from its specification, as returned by {@link #toString()}.
+	 * @param spec the specification; if null or blank, {@link #LINEAR} is returned
+	 * @return the curve
+	 * @throws IllegalArgumentException if the specification cannot be parsed
+	 */
+	public static PressureCurve parse(String spec) throws IllegalArgumentException {
+		if (spec == null || spec.isBlank())
+			return LINEAR;
+		double gamma = LINEAR.gamma, contrast = LINEAR.contrast, deadZone = LINEAR.deadZone, min = LINEAR.min, max = LINEAR.max;
+		for (var token : spec.split(";")) {
+			if (token.isBlank())
+				continue;
+			int ind = token.indexOf('=');
+			if (ind < 0)
+				throw new IllegalArgumentException("Invalid pressure curve parameter: " + token.strip());
+			var key = token.substring(0, ind).strip();
+			double value;
+			try {
+				value = Double.parseDouble(token.substring(ind + 1).strip());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for pressure curve parameter " + key + ": " + token.substring(ind + 1).strip());
+			}
+			switch (key.toLowerCase(Locale.ROOT)) {
+			case "gamma":
+				gamma = value;
+				break;
+			case "contrast":
+				contrast = value;
+				break;
+			case "deadzone":
+				deadZone = value;
+				break;
+			case "min":
+				min = value;
+				break;
+			case "max":
+				max = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown pressure curve parameter: " + key);
+			}
+		}
+		return create(gamma, contrast, deadZone, min, max);
+	}
+
+	private double evaluate(double x) {
+		if (x <= deadZone)
+			x = 0;
+		else
+			x = (x - deadZone) / (1 - deadZone);
+		if (gamma != 1)
+			x = Math.pow(x, gamma);
+		if (contrast != 0) {
+			double s = x * x * (3 - 2 * x);
+			x += contrast * (s - x);
+		}
+		return min + (max - min) * x;
+	}
+
+	/**
+	 * Map a raw pressure value through this curve.
+	 * @param pressure raw pressure; values outside 0-1 are clamped
+	 * @return the mapped pressure
+	 */
+	public float apply(double pressure) {
+		if (!(pressure > 0))
+			return lut[0];
+		if (pressure >= 1)
+			return lut[STEPS];
+		double pos = pressure * STEPS;
+		int ind = (int)pos;
+		float lower = lut[ind];
+		return lower + (float)(pos - ind) * (lut[ind + 1] - lower);
+	}
+
+	/**
+	 * Query whether this curve leaves the pressure unchanged.
+	 * @return
+	 */
+	public boolean isLinear() {
+		return gamma == 1 && contrast == 0 && deadZone == 0 && min == 0 && max == 1;
+	}
+
+	/**
+	 * Get the exponent applied to the pressure (&gt; 0, where 1 leaves the pressure unchanged).
+	 * @return
+	 */
+	public double getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Get the strength of the S-curve, from -1 to 1 (where 0 means no S-curve).
+	 * @return
+	 */
+	public double getContrast() {
+		return contrast;
+	}
+
+	/**
+	 * Get the raw pressure at or below which the output is the minimum, from 0 to &lt; 1.
+	 * @return
+	 */
+	public double getDeadZone() {
+		return deadZone;
+	}
+
+	/**
+	 * Get the output for zero pressure, from 0 to 1.
+	 * @return
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Get the output for full pressure, from 0 to 1.
+	 * @return
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Get the specification of this curve, which can be passed to {@link #parse(String)}.
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "gamma=%s;contrast=%s;deadZone=%s;min=%s;max=%s",
+				gamma, contrast, deadZone, min, max);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PressureCurve other))
+			return false;
+		return Double.compare(gamma, other.gamma) == 0 && Double.compare(contrast, other.contrast) == 0 &&
+				Double.compare(deadZone, other.deadZone) == 0 && Double.compare(min, other.min) == 0 &&
+				Double.compare(max, other.max) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(gamma, contrast, deadZone, min, max);
+	}
+
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+/**
+ * Smoothing filter applied to raw pen pressure as it is received.
+ * <p>
+ * Filters are called on JPen's thread once per cycle in which the pressure changed, before it is recorded or published,
+ * so they must be cheap and must not allocate. A filter keeps state between samples and should therefore
+ * only be used by one pen manager; create a new instance (e.g. with {@link #parse(String)}) to change parameters.
+ * <p>
+ * The filter is reset whenever the pen is lifted (pressure 0) or the pen kind changes, so that a new stroke
+ * doesn't start with the end of the previous one.
+ */
+public interface PressureFilter {
+
+	/**
+	 * Filter a pressure sample.
+	 * @param pressure the raw pressure, between 0 and 1
+	 * @param timestampNanos the time of the sample, from {@link System#nanoTime()}
+	 * @return the filtered pressure, between 0 and 1
+	 */
+	float filter(float pressure, long timestampNanos);
+
+	/**
+	 * Discard any state, so that the next sample is treated as the first.
+	 */
+	void reset();
+
+	/**
+	 * Get a filter that returns the pressure unchanged.
+	 * @return
+	 */
+	static PressureFilter none() {
+		return PressureFilters.NONE;
+	}
+
+	/**
+	 * Create an exponential moving average filter.
+	 * @param alpha weight of each new sample, from &gt; 0 (heavy smoothing) to 1 (no smoothing)
+	 * @return
+	 */
+	static PressureFilter exponential(double alpha) {
+		return new PressureFilters.Exponential(alpha);
+	}
+
+	/**
+	 * Create a One Euro filter, which smooths heavily when the pressure is steady but follows quick changes closely.
+	 * @param minCutoff cutoff frequency (Hz) when the pressure is steady; lower values smooth more
+	 * @param beta increase in cutoff frequency per unit of pressure change per second; higher values reduce lag
+	 * @param derivativeCutoff cutoff frequency (Hz) used when estimating the rate of change
+	 * @return
+	 * @see <a href="https://gery.casiez.net/1euro/">One Euro Filter</a>
+	 */
+	static PressureFilter oneEuro(double minCutoff, double beta, double derivativeCutoff) {
+		return new PressureFilters.OneEuro(minCutoff, beta, derivativeCutoff);
+	}
+
+	/**
+	 * Create a Kalman filter with a constant-velocity model.
+	 * @param processNoise spectral density of random changes in the rate of change of pressure; higher values reduce lag
+	 * @param measurementNoise variance of the noise in each raw sample; higher values smooth more
+	 * @return
+	 */
+	static PressureFilter kalman(double processNoise, double measurementNoise) {
+		return new PressureFilters.Kalman(processNoise, measurementNoise);
+	}
+
+	/**
+	 * Create a filter from its specification, as returned by its {@code toString()} method.
+	 * This is the filter name ({@code none}, {@code ema}, {@code oneEuro} or {@code kalman}), optionally followed by
+	 * a colon and parameters, e.g. {@code "oneEuro:minCutoff=3;beta=5"}. Omitted parameters take their default values.
+	 * @param spec the specification; if null or blank, {@link #none()} is returned
+	 * @return a new filter
+	 * @throws IllegalArgumentException if the specification cannot be parsed
+	 */
+	static PressureFilter parse(String spec) throws IllegalArgumentException {
+		return PressureFilters.parse(spec);
+	}
+
+}
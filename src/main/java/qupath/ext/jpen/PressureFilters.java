@@ -0,0 +1,305 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Built-in {@link PressureFilter} implementations.
+ */
+final class PressureFilters {
+
+	private PressureFilters() {
+		throw new AssertionError("Cannot instantiate this class");
+	}
+
+	static final PressureFilter NONE = new PressureFilter() {
+
+		@Override
+		public float filter(float pressure, long timestampNanos) {
+			return pressure;
+		}
+
+		@Override
+		public void reset() {}
+
+		@Override
+		public String toString() {
+			return "none";
+		}
+
+	};
+
+	static PressureFilter parse(String spec) throws IllegalArgumentException {
+		if (spec == null || spec.isBlank())
+			return NONE;
+		int ind = spec.indexOf(':');
+		var name = (ind < 0 ? spec : spec.substring(0, ind)).strip().toLowerCase(Locale.ROOT);
+		var params = parseParameters(ind < 0 ? "" : spec.substring(ind + 1));
+		PressureFilter filter;
+		switch (name) {
+		case "none":
+			filter = NONE;
+			break;
+		case "ema":
+			filter = new Exponential(take(params, "alpha", Exponential.DEFAULT_ALPHA));
+			break;
+		case "oneeuro":
+			filter = new OneEuro(
+					take(params, "minCutoff", OneEuro.DEFAULT_MIN_CUTOFF),
+					take(params, "beta", OneEuro.DEFAULT_BETA),
+					take(params, "dCutoff", OneEuro.DEFAULT_DERIVATIVE_CUTOFF));
+			break;
+		case "kalman":
+			filter = new Kalman(
+					take(params, "q", Kalman.DEFAULT_PROCESS_NOISE),
+					take(params, "r", Kalman.DEFAULT_MEASUREMENT_NOISE));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown pressure filter: " + name);
+		}
+		if (!params.isEmpty())
+			throw new IllegalArgumentException("Unknown parameters for pressure filter " + name + ": " + params.keySet());
+		return filter;
+	}
+
+	private static Map<String, Double> parseParameters(String params) {
+		var map = new HashMap<String, Double>();
+		for (var token : params.split(";")) {
+			if (token.isBlank())
+				continue;
+			int ind = token.indexOf('=');
+			if (ind < 0)
+				throw new IllegalArgumentException("Invalid pressure filter parameter: " + token.strip());
+			var key = token.substring(0, ind).strip().toLowerCase(Locale.ROOT);
+			var value = token.substring(ind + 1).strip();
+			try {
+				map.put(key, Double.parseDouble(value));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for pressure filter parameter " + key + ": " + value);
+			}
+		}
+		return map;
+	}
+
+	private static double take(Map<String, Double> params, String key, double defaultValue) {
+		var value = params.remove(key.toLowerCase(Locale.ROOT));
+		return value == null ? defaultValue : value;
+	}
+
+	private static double requirePositive(String name, double value) {
+		if (!(value > 0) || !Double.isFinite(value))
+			throw new IllegalArgumentException(name + " must be > 0, but was " + value);
+		return value;
+	}
+
+	private static float clamp(double value) {
+		if (value <= 0)
+			return 0f;
+		if (value >= 1)
+			return 1f;
+		return (float)value;
+	}
+
+	/**
+	 * Get the time between samples in seconds, or a nominal value if the samples are out of order.
+	 */
+	private static double secondsBetween(long previous, long current) {
+		long dt = current - previous;
+		return dt > 0 ? dt * 1e-9 : 1e-3;
+	}
+
+
+	static class Exponential implements PressureFilter {
+
+		static final double DEFAULT_ALPHA = 0.5;
+
+		private final double alpha;
+
+		private boolean initialized = false;
+		private double value;
+
+		Exponential(double alpha) {
+			this.alpha = requirePositive("Alpha", alpha);
+			if (alpha > 1)
+				throw new IllegalArgumentException("Alpha must be <= 1, but was " + alpha);
+		}
+
+		@Override
+		public float filter(float pressure, long timestampNanos) {
+			if (initialized)
+				value += alpha * (pressure - value);
+			else {
+				value = pressure;
+				initialized = true;
+			}
+			return clamp(value);
+		}
+
+		@Override
+		public void reset() {
+			initialized = false;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "ema:alpha=%s", alpha);
+		}
+
+	}
+
+
+	static class OneEuro implements PressureFilter {
+
+		static final double DEFAULT_MIN_CUTOFF = 3.0;
+		static final double DEFAULT_BETA = 5.0;
+		static final double DEFAULT_DERIVATIVE_CUTOFF = 1.0;
+
+		private final double minCutoff;
+		private final double beta;
+		private final double derivativeCutoff;
+
+		private boolean initialized = false;
+		private long lastTimestamp;
+		private double value;
+		private double derivative;
+
+		OneEuro(double minCutoff, double beta, double derivativeCutoff) {
+			this.minCutoff = requirePositive("Minimum cutoff", minCutoff);
+			if (!(beta >= 0) || !Double.isFinite(beta))
+				throw new IllegalArgumentException("Beta must be >= 0, but was " + beta);
+			this.beta = beta;
+			this.derivativeCutoff = requirePositive("Derivative cutoff", derivativeCutoff);
+		}
+
+		private static double smoothingFactor(double cutoff, double dt) {
+			double tau = 1.0 / (2 * Math.PI * cutoff);
+			return 1.0 / (1.0 + tau / dt);
+		}
+
+		@Override
+		public float filter(float pressure, long timestampNanos) {
+			if (!initialized) {
+				value = pressure;
+				derivative = 0;
+				lastTimestamp = timestampNanos;
+				initialized = true;
+				return clamp(value);
+			}
+			double dt = secondsBetween(lastTimestamp, timestampNanos);
+			lastTimestamp = timestampNanos;
+			double rawDerivative = (pressure - value) / dt;
+			derivative += smoothingFactor(derivativeCutoff, dt) * (rawDerivative - derivative);
+			double cutoff = minCutoff + beta * Math.abs(derivative);
+			value += smoothingFactor(cutoff, dt) * (pressure - value);
+			return clamp(value);
+		}
+
+		@Override
+		public void reset() {
+			initialized = false;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "oneEuro:minCutoff=%s;beta=%s;dCutoff=%s", minCutoff, beta, derivativeCutoff);
+		}
+
+	}
+
+
+	/**
+	 * Kalman filter tracking pressure and its rate of change, assuming the rate of change is
+	 * perturbed by white noise. The 2x2 covariance matrix is held in separate fields.
+	 */
+	static class Kalman implements PressureFilter {
+
+		static final double DEFAULT_PROCESS_NOISE = 10.0;
+		static final double DEFAULT_MEASUREMENT_NOISE = 4e-4;
+
+		private final double q;
+		private final double r;
+
+		private boolean initialized = false;
+		private long lastTimestamp;
+		private double value;
+		private double velocity;
+		private double p00, p01, p10, p11;
+
+		Kalman(double processNoise, double measurementNoise) {
+			this.q = requirePositive("Process noise", processNoise);
+			this.r = requirePositive("Measurement noise", measurementNoise);
+		}
+
+		@Override
+		public float filter(float pressure, long timestampNanos) {
+			if (!initialized) {
+				value = pressure;
+				velocity = 0;
+				p00 = r;
+				p01 = 0;
+				p10 = 0;
+				p11 = 1;
+				lastTimestamp = timestampNanos;
+				initialized = true;
+				return clamp(value);
+			}
+			double dt = secondsBetween(lastTimestamp, timestampNanos);
+			lastTimestamp = timestampNanos;
+
+			// Predict
+			value += velocity * dt;
+			double dt2 = dt * dt;
+			double n00 = p00 + dt * (p01 + p10) + dt2 * p11 + q * dt2 * dt / 3;
+			double n01 = p01 + dt * p11 + q * dt2 / 2;
+			double n10 = p10 + dt * p11 + q * dt2 / 2;
+			double n11 = p11 + q * dt;
+
+			// Update
+			double residual = pressure - value;
+			double s = n00 + r;
+			double k0 = n00 / s;
+			double k1 = n10 / s;
+			value += k0 * residual;
+			velocity += k1 * residual;
+			p00 = (1 - k0) * n00;
+			p01 = (1 - k0) * n01;
+			p10 = n10 - k1 * n00;
+			p11 = n11 - k1 * n01;
+			return clamp(value);
+		}
+
+		@Override
+		public void reset() {
+			initialized = false;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "kalman:q=%s;r=%s", q, r);
+		}
+
+	}
+
+}
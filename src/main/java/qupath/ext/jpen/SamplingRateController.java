@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jpen.Pen;
+
+/**
+ * Switch JPen between a low idle sampling frequency and a high active frequency.
+ * <p>
+ * The active frequency is used while a stylus or eraser is in proximity of the tablet and a pressure-aware tool is selected.
+ * Switching up happens as soon as stylus input is seen; switching down only happens once there has been no stylus input
+ * for a hold time, so that brief gaps (e.g. lifting the pen between strokes) don't cause the rate to flip back and forth.
+ */
+public final class SamplingRateController {
+
+	private static final Logger logger = LoggerFactory.getLogger(SamplingRateController.class);
+
+	/**
+	 * JPen sampling frequency (Hz) when the stylus is not in use.
+	 */
+	static final String IDLE_FREQUENCY = JPenProperties.PREFIX + "idleFrequency";
+
+	/**
+	 * JPen sampling frequency (Hz) while the stylus is in use with a pressure-aware tool.
+	 */
+	static final String ACTIVE_FREQUENCY = JPenProperties.PREFIX + "activeFrequency";
+
+	/**
+	 * Time (in milliseconds) without stylus input before switching back to the idle frequency.
+	 */
+	static final String HOLD_MILLIS = JPenProperties.PREFIX + "rateHoldMillis";
+
+	private static final int MAX_FREQUENCY = 1000;
+
+	private final Pen pen;
+	private final int idleFrequency;
+	private final int activeFrequency;
+	private final long holdNanos;
+
+	private final boolean adaptive;
+
+	private volatile boolean toolActive = true;
+	private volatile boolean active = false;
+	private volatile long lastActivity = 0L;
+
+	// Metrics - only updated while synchronized
+	private long lastSwitch;
+	private long idleNanos = 0L;
+	private long activeNanos = 0L;
+	private int switchCount = 0;
+
+	SamplingRateController(Pen pen) {
+		this(pen,
+				(int)JPenProperties.getLong(IDLE_FREQUENCY, 20),
+				(int)JPenProperties.getLong(ACTIVE_FREQUENCY, 200),
+				TimeUnit.MILLISECONDS.toNanos(JPenProperties.getLong(HOLD_MILLIS, 2000)));
+	}
+
+	SamplingRateController(Pen pen, int idleFrequency, int activeFrequency, long holdNanos) {
+		this.pen = pen;
+		this.idleFrequency = clampFrequency(idleFrequency);
+		this.activeFrequency = Math.max(this.idleFrequency, clampFrequency(activeFrequency));
+		this.holdNanos = Math.max(0L, holdNanos);
+		this.lastSwitch = System.nanoTime();
+		this.adaptive = this.activeFrequency > this.idleFrequency;
+		pen.setFrequencyLater(this.idleFrequency);
+	}
+
+	private static int clampFrequency(int frequency) {
+		return Math.max(1, Math.min(MAX_FREQUENCY, frequency));
+	}
+
+	/**
+	 * Notify the controller of stylus or eraser input.
+	 * This is called from JPen's thread for every level event, and is cheap unless the frequency needs to change.
+	 * @param timestampNanos the time of the input, from {@link System#nanoTime()}
+	 */
+	void onStylusInput(long timestampNanos) {
+		lastActivity = timestampNanos;
+		if (!active && toolActive && adaptive)
+			setActive(true, timestampNanos);
+	}
+
+	/**
+	 * Set whether the selected tool makes use of pressure.
+	 * When it does not, the idle frequency is used regardless of stylus input.
+	 * @param pressureAware
+	 */
+	void setPressureAwareTool(boolean pressureAware) {
+		toolActive = pressureAware;
+		if (!adaptive)
+			return;
+		long now = System.nanoTime();
+		if (!pressureAware)
+			setActive(false, now);
+		else if (now - lastActivity < holdNanos)
+			setActive(true, now);
+	}
+
+	private synchronized void setActive(boolean activate, long now) {
+		if (active == activate)
+			return;
+		if (active)
+			activeNanos += now - lastSwitch;
+		else
+			idleNanos += now - lastSwitch;
+		lastSwitch = now;
+		switchCount++;
+		active = activate;
+		int frequency = activate ? activeFrequency : idleFrequency;
+		pen.setFrequencyLater(frequency);
+		logger.debug("JPen sampling frequency set to {} Hz", frequency);
+		if (activate)
+			BackgroundTimer.schedule(this::checkIdle, holdNanos);
+	}
+
+	private synchronized void checkIdle() {
+		if (!active)
+			return;
+		long now = System.nanoTime();
+		long idle = now - lastActivity;
+		if (!toolActive || idle >= holdNanos)
+			setActive(false, now);
+		else
+			BackgroundTimer.schedule(this::checkIdle, holdNanos - idle);
+	}
+
+	/**
+	 * Get the sampling frequency currently requested from JPen.
+	 * @return the frequency in Hz
+	 */
+	public int getCurrentFrequency() {
+		return active ? activeFrequency : idleFrequency;
+	}
+
+	/**
+	 * Get the number of times the sampling frequency has changed.
+	 * @return
+	 */
+	public synchronized int getSwitchCount() {
+		return switchCount;
+	}
+
+	/**
+	 * Get the total time spent at each sampling frequency, including the current one.
+	 * @return a map from frequency (Hz) to the time spent at that frequency
+	 */
+	public synchronized Map<Integer, Duration> getTimeAtFrequency() {
+		long current = System.nanoTime() - lastSwitch;
+		var map = new LinkedHashMap<Integer, Duration>();
+		map.put(idleFrequency, Duration.ofNanos(idleNanos + (active ? 0L : current)));
+		if (activeFrequency != idleFrequency)
+			map.put(activeFrequency, Duration.ofNanos(activeNanos + (active ? current : 0L)));
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return "SamplingRateController[current=" + getCurrentFrequency() + " Hz, switches=" + getSwitchCount()
+			+ ", time=" + getTimeAtFrequency() + "]";
+	}
+
+}
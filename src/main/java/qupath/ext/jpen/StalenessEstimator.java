@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns how long pen input can be considered 'recent', based on the observed interval between samples.
+ * <p>
+ * Intervals are accumulated in a histogram with 1 ms bins, which decays over time so that it follows changes
+ * in the sampling rate. The staleness window is a multiple of the 99th percentile interval, within fixed limits.
+ * Gaps longer than the maximum window (e.g. between strokes) are not counted as sampling intervals.
+ * <p>
+ * Only one thread may record samples; the window can be read from any thread.
+ */
+final class StalenessEstimator {
+
+	private static final long BIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int N_BINS = 128;
+
+	private static final long MIN_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long MAX_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+	private static final double PERCENTILE = 0.99;
+	private static final int MULTIPLIER = 3;
+
+	// Halve the histogram counts after this many intervals, so that old intervals gradually lose influence
+	private static final int DECAY_COUNT = 512;
+	// Recompute the window after this many intervals
+	private static final int UPDATE_COUNT = 16;
+
+	private final int[] bins = new int[N_BINS];
+	private int total;
+	private int sinceUpdate;
+	private long lastNanos = Long.MIN_VALUE;
+
+	private volatile long windowNanos;
+
+	/**
+	 * Create an estimator with an initial window based on the expected sampling frequency.
+	 * @param frequencyHz the expected number of samples per second
+	 */
+	StalenessEstimator(int frequencyHz) {
+		long periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, frequencyHz);
+		this.windowNanos = clamp(MULTIPLIER * periodNanos);
+	}
+
+	/**
+	 * Get the current staleness window.
+	 * @return the time in nanoseconds after the last sample for which input should be considered recent
+	 */
+	long getWindowNanos() {
+		return windowNanos;
+	}
+
+	/**
+	 * Query whether a sample with the specified timestamp is still recent.
+	 * @param timestampNanos timestamp from {@link System#nanoTime()}, or 0 if there has been no sample
+	 * @param nowNanos current time from {@link System#nanoTime()}
+	 * @return
+	 */
+	boolean isRecent(long timestampNanos, long nowNanos) {
+		return timestampNanos != 0L && nowNanos - timestampNanos <= windowNanos;
+	}
+
+	/**
+	 * Record that a sample was received. This must only be called from the writer thread.
+	 * @param nowNanos time from {@link System#nanoTime()}
+	 */
+	void recordSample(long nowNanos) {
+		long last = lastNanos;
+		lastNanos = nowNanos;
+		if (last == Long.MIN_VALUE)
+			return;
+		long interval = nowNanos - last;
+		if (interval <= 0 || interval > MAX_WINDOW_NANOS)
+			return;
+		bins[(int)Math.min(N_BINS - 1, interval / BIN_NANOS)]++;
+		total++;
+		if (total >= DECAY_COUNT) {
+			total = 0;
+			for (int i = 0; i < N_BINS; i++) {
+				bins[i] >>= 1;
+				total += bins[i];
+			}
+		}
+		if (++sinceUpdate >= UPDATE_COUNT) {
+			sinceUpdate = 0;
+			updateWindow();
+		}
+	}
+
+	private void updateWindow() {
+		if (total == 0)
+			return;
+		int target = (int)Math.ceil(total * PERCENTILE);
+		int cumulative = 0;
+		for (int i = 0; i < N_BINS; i++) {
+			cumulative += bins[i];
+			if (cumulative >= target) {
+				// Use the upper edge of the bin
+				windowNanos = clamp(MULTIPLIER * (i + 1) * BIN_NANOS);
+				return;
+			}
+		}
+	}
+
+	private static long clamp(long nanos) {
+		return Math.max(MIN_WINDOW_NANOS, Math.min(MAX_WINDOW_NANOS, nanos));
+	}
+
+}
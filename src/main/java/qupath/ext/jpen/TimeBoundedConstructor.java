@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jpen;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jpen.PenManager;
+import jpen.PenProvider;
+
+/**
+ * Wrapper for a JPen provider constructor that constructs the provider on its own thread,
+ * and gives up if construction takes too long.
+ * <p>
+ * JPen constructs providers one after the other on a single thread. Starting all constructors with {@link #start(PenManager)}
+ * means they run concurrently, and a provider that hangs (e.g. Xinput talking to a slow X server) is abandoned after a timeout
+ * rather than stalling the others.
+ */
+class TimeBoundedConstructor implements PenProvider.Constructor {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeBoundedConstructor.class);
+
+	/**
+	 * Maximum time to wait for a provider to be constructed, in milliseconds.
+	 */
+	static final String TIMEOUT_MILLIS = JPenProperties.PREFIX + "providerTimeoutMillis";
+
+	private static final long DEFAULT_TIMEOUT_MILLIS = 5000L;
+
+	private final PenProvider.Constructor delegate;
+	private final long timeoutMillis;
+
+	private CompletableFuture<Boolean> future;
+	private long startNanos;
+	private volatile boolean abandoned = false;
+	private volatile PenProvider.ConstructionException timeoutException;
+
+	TimeBoundedConstructor(PenProvider.Constructor delegate) {
+		this(delegate, JPenProperties.getLong(TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS));
+	}
+
+	TimeBoundedConstructor(PenProvider.Constructor delegate, long timeoutMillis) {
+		this.delegate = delegate;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Get the wrapped constructor.
+	 * @return
+	 */
+	PenProvider.Constructor getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Start constructing the provider on a new daemon thread, if it hasn't been started already.
+	 * @param penManager
+	 */
+	synchronized void start(PenManager penManager) {
+		if (future != null)
+			return;
+		startNanos = System.nanoTime();
+		future = new CompletableFuture<>();
+		var thread = new Thread(() -> {
+			try {
+				future.complete(delegate.constructable(penManager) && delegate.construct(penManager));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+			if (abandoned)
+				handleLateCompletion();
+		}, "jpen-provider-" + delegate.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void handleLateCompletion() {
+		var provider = delegate.getConstructed();
+		logger.warn("JPen provider {} completed after {} ms, but was already abandoned - it will be tried again on the next launch (use -D{}=... to wait longer)",
+				delegate.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), TIMEOUT_MILLIS);
+		if (provider != null) {
+			try {
+				provider.penManagerPaused(true);
+			} catch (Throwable t) {
+				logger.debug("Unable to pause abandoned provider: {}", t.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Query whether construction was abandoned because it exceeded the timeout.
+	 * JPen has no way to add a provider once it has finished constructing them, so an abandoned provider
+	 * can't be adopted if it completes later; however, a timeout isn't recorded as a failure for later launches.
+	 * @return
+	 */
+	boolean isAbandoned() {
+		return abandoned;
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+
+	@Override
+	public boolean constructable(PenManager penManager) {
+		return delegate.constructable(penManager);
+	}
+
+	@Override
+	public boolean construct(PenManager penManager) {
+		start(penManager);
+		long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - (System.nanoTime() - startNanos);
+		try {
+			return future.get(Math.max(0L, remainingNanos), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			abandoned = true;
+			logger.warn("JPen provider {} not constructed within {} ms - it will not be used (use -D{}=... to change the timeout)",
+					delegate.getName(), timeoutMillis, TIMEOUT_MILLIS);
+			timeoutException = new PenProvider.ConstructionException("Timed out after " + timeoutMillis + " ms");
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abandoned = true;
+			return false;
+		} catch (ExecutionException e) {
+			logger.warn("JPen provider {} failed: {}", delegate.getName(), e.getCause().getLocalizedMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public PenManager getPenManager() {
+		return delegate.getPenManager();
+	}
+
+	@Override
+	public PenProvider.ConstructionException getConstructionException() {
+		var exception = timeoutException;
+		return exception == null ? delegate.getConstructionException() : exception;
+	}
+
+	@Override
+	public PenProvider getConstructed() {
+		if (abandoned)
+			return null;
+		return delegate.getConstructed();
+	}
+
+	@Override
+	public int getNativeVersion() {
+		return delegate.getNativeVersion();
+	}
+
+	@Override
+	public int getNativeBuild() {
+		return delegate.getNativeBuild();
+	}
+
+	@Override
+	public int getExpectedNativeBuild() {
+		return delegate.getExpectedNativeBuild();
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+
+}
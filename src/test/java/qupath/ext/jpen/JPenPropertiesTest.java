@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class JPenPropertiesTest {
+
+	private static final String KEY = JPenProperties.PREFIX + "test.value";
+
+	@AfterEach
+	void clearProperty() {
+		System.clearProperty(KEY);
+	}
+
+	@Test
+	void longWithinRange() {
+		System.setProperty(KEY, "64");
+		assertEquals(64, JPenProperties.getLong(KEY, 1024, 1, 65536));
+	}
+
+	@Test
+	void longOutsideRangeUsesDefault() {
+		for (var value : new String[] {"0", "-1", "65537", Long.toString(Long.MAX_VALUE)}) {
+			System.setProperty(KEY, value);
+			assertEquals(1024, JPenProperties.getLong(KEY, 1024, 1, 65536), value);
+		}
+	}
+
+	@Test
+	void longInvalidUsesDefault() {
+		System.setProperty(KEY, "lots");
+		assertEquals(1024, JPenProperties.getLong(KEY, 1024, 1, 65536));
+		System.clearProperty(KEY);
+		assertEquals(1024, JPenProperties.getLong(KEY, 1024, 1, 65536));
+	}
+
+}
@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NativeLibraryCacheTest {
+
+	private static final String LIB_NAME = "libtest-64.so";
+
+	private Path dir;
+	private Path jar;
+	private Path cacheDir;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		dir = Files.createTempDirectory("jpen-cache-test");
+		cacheDir = dir.resolve("cache");
+		jar = dir.resolve("extension.jar");
+		try (var zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+			zip.putNextEntry(new ZipEntry("natives/"));
+			zip.putNextEntry(new ZipEntry("natives/" + LIB_NAME));
+			zip.write("original library".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		try (var paths = Files.walk(dir)) {
+			for (var path : paths.sorted(Comparator.reverseOrder()).toList())
+				Files.delete(path);
+		}
+	}
+
+	@Test
+	void defaultDirectoryIsNotShared() {
+		var tmp = Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+		assertFalse(NativeLibraryCache.getDefaultCacheDirectory().toAbsolutePath().normalize().startsWith(tmp));
+	}
+
+	@Test
+	void findCachedFromJar() throws Exception {
+		var cache = new NativeLibraryCache(cacheDir);
+		try (var loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+			var url = loader.getResource("natives");
+			Path stored;
+			try (var fs = FileSystems.newFileSystem(jar)) {
+				stored = cache.store(url, fs.getPath("natives", LIB_NAME));
+			}
+			assertEquals(stored, cache.findCached(url, loader));
+		}
+	}
+
+	@Test
+	void findCachedRejectsPlantedLibrary() throws Exception {
+		var cache = new NativeLibraryCache(cacheDir);
+		try (var loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+			var url = loader.getResource("natives");
+			// Write a different library, with an index that is consistent with it
+			var planted = "planted library".getBytes(StandardCharsets.UTF_8);
+			var sha = NativeLibraryCache.sha256(Files.write(dir.resolve("planted"), planted));
+			var stored = Files.createDirectories(cacheDir.resolve(sha)).resolve(LIB_NAME);
+			Files.write(stored, planted);
+			var props = new Properties();
+			props.setProperty("source", NativeLibraryCache.getSourceJar(url).toString());
+			props.setProperty("sourceSize", Long.toString(Files.size(jar)));
+			props.setProperty("sourceModified", Long.toString(Files.getLastModifiedTime(jar).toMillis()));
+			props.setProperty("file", LIB_NAME);
+			props.setProperty("sha256", sha);
+			try (var out = Files.newOutputStream(cacheDir.resolve("index.properties"))) {
+				props.store(out, null);
+			}
+			assertNull(cache.findCached(url, loader));
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jpen.provider.NativeLibraryLoader;
+import jpen.provider.xinput.XinputProvider;
+
+class NativeLoaderBridgeTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(NativeLoaderBridgeTest.class);
+
+	@Test
+	void setLoadedOnXinputProvider() {
+		NativeLoaderBridge.setLoaded(XinputProvider.class);
+		assertTrue(NativeLoaderBridge.isLoaded(XinputProvider.class));
+	}
+
+	@Test
+	void classWithoutLibLoader() {
+		var e = assertThrows(IllegalStateException.class, () -> NativeLoaderBridge.setLoaded(NativeLoaderBridgeTest.class));
+		assertTrue(e.getMessage().contains("LIB_LOADER"), e.getMessage());
+		assertTrue(e.getMessage().contains(NativeLoaderBridgeTest.class.getName()), e.getMessage());
+		assertTrue(e.getMessage().contains("Incompatible JPen version"), e.getMessage());
+	}
+
+	@Test
+	void classWithoutLibLoaderFailsEveryTime() {
+		assertThrows(IllegalStateException.class, () -> NativeLoaderBridge.isLoaded(NativeLoaderBridgeTest.class));
+		assertThrows(IllegalStateException.class, () -> NativeLoaderBridge.isLoaded(NativeLoaderBridgeTest.class));
+		// A failure for one class shouldn't affect another
+		NativeLoaderBridge.setLoaded(XinputProvider.class);
+		assertTrue(NativeLoaderBridge.isLoaded(XinputProvider.class));
+	}
+
+	@Test
+	void sameLoaderAsReflection() throws Exception {
+		var field = XinputProvider.class.getDeclaredField("LIB_LOADER");
+		field.setAccessible(true);
+		var loader = (NativeLibraryLoader)field.get(null);
+		var loadedField = NativeLibraryLoader.class.getDeclaredField("loaded");
+		loadedField.setAccessible(true);
+		NativeLoaderBridge.setLoaded(XinputProvider.class);
+		assertTrue(loadedField.getBoolean(loader));
+		assertSame(loader, field.get(null));
+	}
+
+	/**
+	 * Rough comparison of the cost of flagging a provider with cached handles and with reflection.
+	 * This only reports the timings, since they depend too much on the machine to be asserted,
+	 * and so only runs when requested with {@code -Dqupath.jpen.benchmark=true}.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "qupath.jpen.benchmark", matches = "true")
+	void benchmarkSetLoaded() throws Exception {
+		int n = 200_000;
+		for (int i = 0; i < n; i++)
+			NativeLoaderBridge.setLoaded(XinputProvider.class);
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			NativeLoaderBridge.setLoaded(XinputProvider.class);
+		double handleNanos = (System.nanoTime() - start) / (double)n;
+
+		for (int i = 0; i < n; i++)
+			setLoadedReflectively(XinputProvider.class);
+		start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			setLoadedReflectively(XinputProvider.class);
+		double reflectionNanos = (System.nanoTime() - start) / (double)n;
+
+		logger.info("setLoaded: {} ns/op with handles, {} ns/op with reflection",
+				String.format("%.1f", handleNanos), String.format("%.1f", reflectionNanos));
+		assertTrue(NativeLoaderBridge.isLoaded(XinputProvider.class));
+	}
+
+	/**
+	 * The approach used before {@link NativeLoaderBridge}, looking up the fields on every call.
+	 */
+	private static void setLoadedReflectively(Class<?> cls) throws Exception {
+		Field field = cls.getDeclaredField("LIB_LOADER");
+		field.setAccessible(true);
+		var loader = field.get(null);
+		Field fieldLoaded = NativeLibraryLoader.class.getDeclaredField("loaded");
+		fieldLoaded.setAccessible(true);
+		fieldLoaded.set(loader, true);
+	}
+
+}
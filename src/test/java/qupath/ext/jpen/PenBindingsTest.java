@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import jpen.PButton;
+import jpen.PScroll;
+
+class PenBindingsTest {
+
+	@Test
+	void parseBlank() {
+		assertSame(PenBindings.NONE, PenBindings.parse(null));
+		assertSame(PenBindings.NONE, PenBindings.parse("  "));
+		assertEquals("", PenBindings.NONE.toString());
+		for (var button : PButton.Type.values())
+			assertEquals(PenAction.NONE, PenBindings.NONE.getButtonAction(button));
+		for (var scroll : PScroll.Type.values())
+			assertEquals(PenAction.NONE, PenBindings.NONE.getScrollAction(scroll));
+	}
+
+	@Test
+	void parseButtonsAndScrolls() {
+		var bindings = PenBindings.parse("CENTER=PAN;RIGHT=UNDO;UP=ZOOM_IN;DOWN=ZOOM_OUT");
+		assertEquals(PenAction.PAN, bindings.getButtonAction(PButton.Type.CENTER));
+		assertEquals(PenAction.UNDO, bindings.getButtonAction(PButton.Type.RIGHT));
+		assertEquals(PenAction.NONE, bindings.getButtonAction(PButton.Type.LEFT));
+		assertEquals(PenAction.ZOOM_IN, bindings.getScrollAction(PScroll.Type.UP));
+		assertEquals(PenAction.ZOOM_OUT, bindings.getScrollAction(PScroll.Type.DOWN));
+	}
+
+	@Test
+	void parseIgnoresCaseAndWhitespace() {
+		var bindings = PenBindings.parse(" center = pan ;; up=Zoom_In ");
+		assertEquals(PenBindings.NONE
+				.withButtonAction(PButton.Type.CENTER, PenAction.PAN)
+				.withScrollAction(PScroll.Type.UP, PenAction.ZOOM_IN), bindings);
+	}
+
+	@Test
+	void laterBindingReplacesEarlier() {
+		var bindings = PenBindings.parse("RIGHT=UNDO;RIGHT=REDO");
+		assertEquals(PenAction.REDO, bindings.getButtonAction(PButton.Type.RIGHT));
+	}
+
+	@Test
+	void roundTrip() {
+		var bindings = PenBindings.parse("DOWN=ZOOM_OUT;CENTER=PAN;RIGHT=WAND_TOOL");
+		assertEquals("CENTER=PAN;RIGHT=WAND_TOOL;DOWN=ZOOM_OUT", bindings.toString());
+		assertEquals(bindings, PenBindings.parse(bindings.toString()));
+		assertEquals(bindings.hashCode(), PenBindings.parse(bindings.toString()).hashCode());
+	}
+
+	@Test
+	void roundTripCustom() {
+		var bindings = PenBindings.NONE
+				.withButtonAction(PButton.Type.CUSTOM, PenAction.UNDO)
+				.withScrollAction(PScroll.Type.CUSTOM, PenAction.ZOOM_IN);
+		assertEquals("BUTTON_CUSTOM=UNDO;SCROLL_CUSTOM=ZOOM_IN", bindings.toString());
+		var parsed = PenBindings.parse(bindings.toString());
+		assertEquals(bindings, parsed);
+		assertEquals(PenAction.UNDO, parsed.getButtonAction(PButton.Type.CUSTOM));
+		assertEquals(PenAction.ZOOM_IN, parsed.getScrollAction(PScroll.Type.CUSTOM));
+	}
+
+	@Test
+	void parsePrefixedKeys() {
+		var bindings = PenBindings.parse("BUTTON_CENTER=PAN;SCROLL_UP=ZOOM_IN");
+		assertEquals(PenBindings.parse("CENTER=PAN;UP=ZOOM_IN"), bindings);
+	}
+
+	@Test
+	void withActionIsACopy() {
+		var bindings = PenBindings.parse("CENTER=PAN");
+		var changed = bindings.withButtonAction(PButton.Type.CENTER, null);
+		assertEquals(PenAction.PAN, bindings.getButtonAction(PButton.Type.CENTER));
+		assertEquals(PenAction.NONE, changed.getButtonAction(PButton.Type.CENTER));
+		assertEquals(PenBindings.NONE, changed);
+		assertNotEquals(bindings, changed);
+	}
+
+	@Test
+	void parseInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> PenBindings.parse("CENTER"));
+		assertThrows(IllegalArgumentException.class, () -> PenBindings.parse("CENTER=FLY"));
+		assertThrows(IllegalArgumentException.class, () -> PenBindings.parse("MIDDLE=PAN"));
+		// CUSTOM is both a button and a scroll type
+		assertThrows(IllegalArgumentException.class, () -> PenBindings.parse("CUSTOM=PAN"));
+		assertThrows(IllegalArgumentException.class, () -> PenBindings.parse("SCROLL_CENTER=PAN"));
+	}
+
+}
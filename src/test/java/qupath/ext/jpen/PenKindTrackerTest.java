@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import jpen.PKind;
+
+class PenKindTrackerTest {
+
+	private static final long TIMEOUT_MILLIS = 2000;
+
+	/**
+	 * Listener that records each notification as a string.
+	 */
+	private static class RecordingListener implements PenKindListener {
+
+		private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+		@Override
+		public void penKindChanged(PKind.Type previous, PKind.Type current) {
+			events.add(previous + "->" + current);
+		}
+
+		@Override
+		public void penProximityChanged(boolean inProximity) {
+			events.add(inProximity ? "in" : "out");
+		}
+
+		String next() throws InterruptedException {
+			var event = events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			assertNotNull(event, "No notification received");
+			return event;
+		}
+
+	}
+
+	private static void commit(PenKindTracker tracker, PenState state, PKind.Type kind) {
+		state.kind = kind.ordinal();
+		state.timestamp = System.nanoTime();
+		tracker.onCommit(state);
+	}
+
+	@Test
+	void notifiesTransitionsInOrder() throws Exception {
+		var tracker = new PenKindTracker(new StalenessEstimator(100), PenState.KIND_NONE);
+		var listener = new RecordingListener();
+		tracker.addListener(listener);
+		var state = new PenState();
+
+		commit(tracker, state, PKind.Type.STYLUS);
+		commit(tracker, state, PKind.Type.STYLUS);
+		assertTrue(tracker.isInProximity());
+		assertFalse(tracker.isEraser());
+		commit(tracker, state, PKind.Type.ERASER);
+		assertTrue(tracker.isEraser());
+		commit(tracker, state, PKind.Type.CURSOR);
+		assertFalse(tracker.isInProximity());
+		assertFalse(tracker.isEraser());
+
+		assertEquals("null->STYLUS", listener.next());
+		assertEquals("in", listener.next());
+		assertEquals("STYLUS->ERASER", listener.next());
+		assertEquals("ERASER->CURSOR", listener.next());
+		assertEquals("out", listener.next());
+	}
+
+	@Test
+	void leavesProximityWithoutInput() throws Exception {
+		var staleness = new StalenessEstimator(100);
+		var tracker = new PenKindTracker(staleness, PKind.Type.ERASER.ordinal());
+		var listener = new RecordingListener();
+		tracker.addListener(listener);
+		commit(tracker, new PenState(), PKind.Type.ERASER);
+		assertEquals("in", listener.next());
+		assertTrue(tracker.isEraser());
+		// Should leave proximity once the staleness window has passed
+		assertEquals("out", listener.next());
+		assertFalse(tracker.isInProximity());
+		assertFalse(tracker.isEraser());
+	}
+
+	@Test
+	void removedListenerIsNotNotified() throws Exception {
+		var tracker = new PenKindTracker(new StalenessEstimator(100), PenState.KIND_NONE);
+		var removed = new RecordingListener();
+		var kept = new RecordingListener();
+		tracker.addListener(removed);
+		tracker.addListener(kept);
+		tracker.removeListener(removed);
+		commit(tracker, new PenState(), PKind.Type.STYLUS);
+		assertEquals("null->STYLUS", kept.next());
+		assertEquals("in", kept.next());
+		assertTrue(removed.events.isEmpty());
+	}
+
+}
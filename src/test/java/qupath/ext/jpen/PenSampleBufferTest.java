@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class PenSampleBufferTest {
+
+	private static void append(PenSampleBuffer buffer, long time, float pressure) {
+		buffer.append(time, time, -time, pressure, 0f, 0f, 1);
+	}
+
+	@Test
+	void capacityRoundedUp() {
+		assertEquals(1, new PenSampleBuffer(1).getCapacity());
+		assertEquals(8, new PenSampleBuffer(5).getCapacity());
+		assertEquals(1024, new PenSampleBuffer(1024).getCapacity());
+		assertThrows(IllegalArgumentException.class, () -> new PenSampleBuffer(0));
+	}
+
+	@Test
+	void readSinceEmpty() {
+		var buffer = new PenSampleBuffer(8);
+		var samples = new PenSampleBuffer.Samples(8);
+		assertEquals(0, buffer.readSince(Long.MIN_VALUE, samples));
+		assertEquals(0, samples.size());
+	}
+
+	@Test
+	void readSinceIsExclusive() {
+		var buffer = new PenSampleBuffer(8);
+		for (int t = 1; t <= 5; t++)
+			append(buffer, t * 10, t / 10f);
+		var samples = new PenSampleBuffer.Samples(8);
+		assertEquals(3, buffer.readSince(20, samples));
+		assertEquals(30, samples.getTime(0));
+		assertEquals(50, samples.getTime(2));
+		assertEquals(0.3f, samples.getPressure(0));
+		assertEquals(30f, samples.getX(0));
+		assertEquals(-30f, samples.getY(0));
+		assertEquals(1, samples.getKind(0));
+		assertEquals(0, buffer.readSince(50, samples));
+	}
+
+	@Test
+	void readSinceAfterWraparound() {
+		var buffer = new PenSampleBuffer(8);
+		for (int t = 1; t <= 20; t++)
+			append(buffer, t, t / 100f);
+		assertEquals(20, buffer.getTotalCount());
+		var samples = new PenSampleBuffer.Samples(16);
+		// Only the most recent 8 are retained, oldest first
+		assertEquals(8, buffer.readSince(Long.MIN_VALUE, samples));
+		for (int i = 0; i < 8; i++)
+			assertEquals(13 + i, samples.getTime(i));
+		assertEquals(4, buffer.readSince(16, samples));
+		assertEquals(17, samples.getTime(0));
+	}
+
+	@Test
+	void readSinceKeepsMostRecentWhenOutputIsSmall() {
+		var buffer = new PenSampleBuffer(16);
+		for (int t = 1; t <= 10; t++)
+			append(buffer, t, 0.5f);
+		var samples = new PenSampleBuffer.Samples(3);
+		assertEquals(3, buffer.readSince(Long.MIN_VALUE, samples));
+		assertEquals(8, samples.getTime(0));
+		assertEquals(10, samples.getTime(2));
+	}
+
+	@Test
+	void pressureAtEmptyUsesFallback() {
+		var buffer = new PenSampleBuffer(8);
+		assertEquals(0.25f, buffer.getPressureAt(100, 0, 0.25f));
+	}
+
+	@Test
+	void pressureAtInterpolates() {
+		var buffer = new PenSampleBuffer(8);
+		append(buffer, 100, 0.2f);
+		append(buffer, 200, 0.6f);
+		append(buffer, 300, 0.4f);
+		assertEquals(0.2f, buffer.getPressureAt(100, 0, 0f), 1e-6);
+		assertEquals(0.4f, buffer.getPressureAt(150, 0, 0f), 1e-6);
+		assertEquals(0.6f, buffer.getPressureAt(200, 0, 0f), 1e-6);
+		assertEquals(0.5f, buffer.getPressureAt(250, 0, 0f), 1e-6);
+	}
+
+	@Test
+	void pressureBeforeOldestSample() {
+		var buffer = new PenSampleBuffer(8);
+		append(buffer, 100, 0.2f);
+		append(buffer, 200, 0.6f);
+		assertEquals(0.2f, buffer.getPressureAt(50, 1000, 0f), 1e-6);
+	}
+
+	@Test
+	void pressureExtrapolationIsLimited() {
+		var buffer = new PenSampleBuffer(8);
+		append(buffer, 100, 0.2f);
+		append(buffer, 200, 0.4f);
+		// Extrapolation disabled
+		assertEquals(0.4f, buffer.getPressureAt(250, 0, 0f), 1e-6);
+		// Within the limit
+		assertEquals(0.5f, buffer.getPressureAt(250, 100, 0f), 1e-6);
+		// Beyond the limit, held at the extrapolated value at the limit
+		assertEquals(0.5f, buffer.getPressureAt(1000, 50, 0f), 1e-6);
+		// Clamped to 0-1
+		assertEquals(1f, buffer.getPressureAt(10_000, 10_000, 0f), 1e-6);
+	}
+
+	@Test
+	void pressureExtrapolationClampedAtZero() {
+		var buffer = new PenSampleBuffer(8);
+		append(buffer, 100, 0.4f);
+		append(buffer, 200, 0.2f);
+		assertEquals(0f, buffer.getPressureAt(10_000, 10_000, 1f), 1e-6);
+	}
+
+	@Test
+	void pressureAtAfterWraparound() {
+		var buffer = new PenSampleBuffer(4);
+		for (int t = 1; t <= 10; t++)
+			append(buffer, t * 100, t / 10f);
+		// Samples 700-1000 are retained, but the oldest slot is skipped
+		assertEquals(0.8f, buffer.getPressureAt(100, 0, 0f), 1e-6);
+		assertEquals(0.85f, buffer.getPressureAt(850, 0, 0f), 1e-6);
+		assertEquals(1f, buffer.getPressureAt(1000, 0, 0f), 1e-6);
+	}
+
+}
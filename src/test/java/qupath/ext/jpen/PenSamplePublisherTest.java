@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.ext.jpen.PenSamplePublisher.OverflowPolicy;
+
+class PenSamplePublisherTest {
+
+	private static final long TIMEOUT_MILLIS = 2000;
+
+	private static PenSample sample(long timestamp) {
+		var state = new PenState();
+		state.timestamp = timestamp;
+		return new PenSample(state, 0.5f);
+	}
+
+	/**
+	 * Subscriber that records what it receives, and only requests samples when asked.
+	 */
+	private static class RecordingSubscriber implements Flow.Subscriber<PenSample> {
+
+		private final CountDownLatch subscribed = new CountDownLatch(1);
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private final BlockingQueue<Long> timestamps = new LinkedBlockingQueue<>();
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscribed.countDown();
+		}
+
+		@Override
+		public void onNext(PenSample item) {
+			timestamps.add(item.getTimestamp());
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		Flow.Subscription awaitSubscription() throws InterruptedException {
+			assertTrue(subscribed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+			return subscription;
+		}
+
+		void awaitCompletion() throws InterruptedException {
+			assertTrue(completed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		}
+
+		long next() throws InterruptedException {
+			var timestamp = timestamps.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			assertTrue(timestamp != null, "No sample received");
+			return timestamp;
+		}
+
+		void assertNothingMore() throws InterruptedException {
+			assertNull(timestamps.poll(50, TimeUnit.MILLISECONDS));
+		}
+
+	}
+
+	@Test
+	void deliversOnlyWhatIsRequested() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, 8, OverflowPolicy.DROP_OLDEST);
+		var subscription = subscriber.awaitSubscription();
+		for (int i = 1; i <= 3; i++)
+			publisher.submit(sample(i));
+		subscriber.assertNothingMore();
+		subscription.request(2);
+		assertEquals(1, subscriber.next());
+		assertEquals(2, subscriber.next());
+		subscriber.assertNothingMore();
+		subscription.request(1);
+		assertEquals(3, subscriber.next());
+		assertEquals(0, publisher.getDroppedCount());
+	}
+
+	@Test
+	void dropOldest() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, 2, OverflowPolicy.DROP_OLDEST);
+		var subscription = subscriber.awaitSubscription();
+		for (int i = 1; i <= 4; i++)
+			publisher.submit(sample(i));
+		assertEquals(2, publisher.getDroppedCount());
+		subscription.request(Long.MAX_VALUE);
+		assertEquals(3, subscriber.next());
+		assertEquals(4, subscriber.next());
+		subscriber.assertNothingMore();
+	}
+
+	@Test
+	void conflateLatest() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, 2, OverflowPolicy.CONFLATE_LATEST);
+		var subscription = subscriber.awaitSubscription();
+		for (int i = 1; i <= 5; i++)
+			publisher.submit(sample(i));
+		assertEquals(3, publisher.getDroppedCount());
+		subscription.request(Long.MAX_VALUE);
+		assertEquals(1, subscriber.next());
+		assertEquals(5, subscriber.next());
+		subscriber.assertNothingMore();
+	}
+
+	@Test
+	void blockTimesOut() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, 1, OverflowPolicy.BLOCK);
+		var subscription = subscriber.awaitSubscription();
+		publisher.submit(sample(1));
+		long start = System.nanoTime();
+		publisher.submit(sample(2));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(elapsedMillis >= 90, "Only blocked for " + elapsedMillis + " ms");
+		assertEquals(1, publisher.getDroppedCount());
+		subscription.request(Long.MAX_VALUE);
+		assertEquals(1, subscriber.next());
+		subscriber.assertNothingMore();
+	}
+
+	@Test
+	void blockWaitsForSpace() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, 1, OverflowPolicy.BLOCK);
+		var subscription = subscriber.awaitSubscription();
+		publisher.submit(sample(1));
+		var requester = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				return;
+			}
+			subscription.request(Long.MAX_VALUE);
+		});
+		requester.start();
+		publisher.submit(sample(2));
+		requester.join();
+		assertEquals(0, publisher.getDroppedCount());
+		assertEquals(1, subscriber.next());
+		assertEquals(2, subscriber.next());
+	}
+
+	@Test
+	void duplicateSubscriber() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		var subscription = subscriber.awaitSubscription();
+		assertThrows(IllegalStateException.class, () -> publisher.subscribe(subscriber));
+		assertEquals(1, publisher.getSubscriberCount());
+		// The original subscription is unaffected
+		subscription.request(1);
+		publisher.submit(sample(1));
+		assertEquals(1, subscriber.next());
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	void invalidRequest() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.awaitSubscription().request(0);
+		subscriber.awaitCompletion();
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+		assertFalse(publisher.hasSubscribers());
+	}
+
+	@Test
+	void invalidBufferSize() {
+		var publisher = new PenSamplePublisher();
+		assertThrows(IllegalArgumentException.class, () -> publisher.subscribe(new RecordingSubscriber(), 0, OverflowPolicy.DROP_OLDEST));
+	}
+
+	@Test
+	void cancel() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		var subscription = subscriber.awaitSubscription();
+		assertTrue(publisher.hasSubscribers());
+		subscription.cancel();
+		assertFalse(publisher.hasSubscribers());
+		subscription.request(1);
+		publisher.submit(sample(1));
+		subscriber.assertNothingMore();
+	}
+
+	@Test
+	void closeCompletesAfterBufferedSamples() throws Exception {
+		var publisher = new PenSamplePublisher();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		var subscription = subscriber.awaitSubscription();
+		publisher.submit(sample(1));
+		publisher.close();
+		subscription.request(1);
+		assertEquals(1, subscriber.next());
+		subscriber.awaitCompletion();
+		assertNull(subscriber.error);
+		assertFalse(publisher.hasSubscribers());
+	}
+
+	@Test
+	void subscribeAfterClose() throws Exception {
+		var publisher = new PenSamplePublisher();
+		publisher.close();
+		var subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.awaitSubscription();
+		subscriber.awaitCompletion();
+		assertNull(subscriber.error);
+		publisher.submit(sample(1));
+		assertFalse(publisher.hasSubscribers());
+	}
+
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PressureCurveTest {
+
+	@Test
+	void parseBlank() {
+		assertSame(PressureCurve.LINEAR, PressureCurve.parse(null));
+		assertSame(PressureCurve.LINEAR, PressureCurve.parse(" "));
+		assertTrue(PressureCurve.parse("").isLinear());
+	}
+
+	@Test
+	void parseDefaults() {
+		var curve = PressureCurve.parse("gamma=0.5");
+		assertEquals(0.5, curve.getGamma());
+		assertEquals(0.0, curve.getContrast());
+		assertEquals(0.0, curve.getDeadZone());
+		assertEquals(0.0, curve.getMin());
+		assertEquals(1.0, curve.getMax());
+		assertFalse(curve.isLinear());
+	}
+
+	@Test
+	void parseIgnoresCaseAndWhitespace() {
+		var curve = PressureCurve.parse(" GAMMA = 2 ; deadzone=0.1;; Min=0.2 ");
+		assertEquals(PressureCurve.create(2, 0, 0.1, 0.2, 1), curve);
+	}
+
+	@Test
+	void roundTrip() {
+		var curve = PressureCurve.create(0.7, -0.25, 0.02, 0.1, 0.9);
+		assertEquals(curve, PressureCurve.parse(curve.toString()));
+		assertEquals(curve.hashCode(), PressureCurve.parse(curve.toString()).hashCode());
+		assertEquals(PressureCurve.LINEAR, PressureCurve.parse(PressureCurve.LINEAR.toString()));
+	}
+
+	@Test
+	void parseInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("gamma"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("gamma=abc"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("slope=1"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("gamma=0"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("gamma=NaN"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("contrast=1.5"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("deadZone=1"));
+		assertThrows(IllegalArgumentException.class, () -> PressureCurve.parse("max=2"));
+	}
+
+	@Test
+	void linearIsIdentity() {
+		for (int i = 0; i <= 100; i++) {
+			double p = i / 100.0;
+			assertEquals(p, PressureCurve.LINEAR.apply(p), 1e-6);
+		}
+	}
+
+	@Test
+	void applyClampsInput() {
+		var curve = PressureCurve.create(1, 0, 0, 0.2, 0.8);
+		assertEquals(0.2f, curve.apply(-1), 1e-6);
+		assertEquals(0.2f, curve.apply(Double.NaN), 1e-6);
+		assertEquals(0.8f, curve.apply(2), 1e-6);
+		assertEquals(0.5f, curve.apply(0.5), 1e-6);
+	}
+
+	@Test
+	void applyGamma() {
+		var curve = PressureCurve.create(0.5, 0, 0, 0, 1);
+		for (int i = 0; i <= 100; i++) {
+			double p = i / 100.0;
+			// Interpolating the lookup table is least accurate close to 0, where the curve is steepest
+			assertEquals(Math.sqrt(p), curve.apply(p), p < 0.01 ? 0.02 : 1e-3);
+		}
+	}
+
+	@Test
+	void applyDeadZone() {
+		var curve = PressureCurve.create(1, 0, 0.2, 0, 1);
+		assertEquals(0f, curve.apply(0.1), 1e-6);
+		assertEquals(0f, curve.apply(0.2), 1e-3);
+		assertEquals(0.5f, curve.apply(0.6), 1e-3);
+		assertEquals(1f, curve.apply(1.0), 1e-6);
+	}
+
+	@Test
+	void applyContrast() {
+		var curve = PressureCurve.create(1, 1, 0, 0, 1);
+		// Full contrast gives a smoothstep, which is symmetric about 0.5
+		assertEquals(0.5f, curve.apply(0.5), 1e-4);
+		assertEquals(0.25 * 0.25 * (3 - 2 * 0.25), curve.apply(0.25), 1e-4);
+		assertTrue(curve.apply(0.1) < 0.1f);
+		assertTrue(curve.apply(0.9) > 0.9f);
+	}
+
+	@Test
+	void applyIsMonotonic() {
+		var curve = PressureCurve.create(0.7, 0.5, 0.05, 0.1, 0.9);
+		float last = curve.apply(0);
+		for (int i = 1; i <= 1000; i++) {
+			float next = curve.apply(i / 1000.0);
+			assertTrue(next >= last);
+			last = next;
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PressureFiltersTest {
+
+	// 200 Hz
+	private static final long PERIOD_NANOS = 5_000_000L;
+
+	@Test
+	void parseNone() {
+		assertSame(PressureFilters.NONE, PressureFilter.parse(null));
+		assertSame(PressureFilters.NONE, PressureFilter.parse(""));
+		assertSame(PressureFilters.NONE, PressureFilter.parse("none"));
+		assertSame(PressureFilters.NONE, PressureFilter.parse(PressureFilter.none().toString()));
+	}
+
+	@Test
+	void parseDefaults() {
+		assertEquals("ema:alpha=0.5", PressureFilter.parse("ema").toString());
+		assertEquals("oneEuro:minCutoff=3.0;beta=5.0;dCutoff=1.0", PressureFilter.parse("oneEuro").toString());
+		assertEquals("kalman:q=10.0;r=4.0E-4", PressureFilter.parse("kalman").toString());
+	}
+
+	@Test
+	void parseParameters() {
+		assertEquals("ema:alpha=0.3", PressureFilter.parse(" EMA : Alpha = 0.3 ").toString());
+		assertEquals("oneEuro:minCutoff=1.0;beta=5.0;dCutoff=2.0", PressureFilter.parse("oneeuro:dCutoff=2;minCutoff=1").toString());
+		assertEquals("kalman:q=20.0;r=0.001", PressureFilter.parse("kalman:q=20;;r=1e-3").toString());
+	}
+
+	@Test
+	void roundTrip() {
+		for (var filter : List.of(PressureFilter.exponential(0.25), PressureFilter.oneEuro(2, 0.5, 1.5), PressureFilter.kalman(5, 1e-3))) {
+			assertEquals(filter.toString(), PressureFilter.parse(filter.toString()).toString());
+		}
+	}
+
+	@Test
+	void parseInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("median"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("ema:beta=1"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("ema:alpha"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("ema:alpha=x"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("ema:alpha=0"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("ema:alpha=1.5"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("oneEuro:beta=-1"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("oneEuro:minCutoff=0"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("kalman:q=0"));
+		assertThrows(IllegalArgumentException.class, () -> PressureFilter.parse("kalman:r=Infinity"));
+	}
+
+	@Test
+	void noneIsUnchanged() {
+		var filter = PressureFilter.none();
+		assertEquals(0.3f, filter.filter(0.3f, 0L));
+		assertEquals(0.9f, filter.filter(0.9f, PERIOD_NANOS));
+	}
+
+	@Test
+	void exponential() {
+		var filter = PressureFilter.exponential(0.5);
+		assertEquals(0f, filter.filter(0f, 0L));
+		assertEquals(0.5f, filter.filter(1f, PERIOD_NANOS));
+		assertEquals(0.75f, filter.filter(1f, 2 * PERIOD_NANOS));
+		filter.reset();
+		assertEquals(0.2f, filter.filter(0.2f, 3 * PERIOD_NANOS));
+	}
+
+	@Test
+	void exponentialAlphaOneIsUnchanged() {
+		var filter = PressureFilter.exponential(1);
+		filter.filter(0.1f, 0L);
+		assertEquals(0.8f, filter.filter(0.8f, PERIOD_NANOS));
+	}
+
+	@Test
+	void smoothingFiltersReduceNoise() {
+		for (var filter : List.of(PressureFilter.exponential(0.3), PressureFilter.oneEuro(3, 5, 1), PressureFilter.kalman(10, 4e-4))) {
+			var random = new Random(42L);
+			double rawError = 0, filteredError = 0;
+			for (int i = 0; i < 400; i++) {
+				float raw = (float)(0.5 + random.nextGaussian() * 0.02);
+				float filtered = filter.filter(raw, i * PERIOD_NANOS);
+				if (i >= 100) {
+					rawError += (raw - 0.5) * (raw - 0.5);
+					filteredError += (filtered - 0.5) * (filtered - 0.5);
+				}
+			}
+			assertTrue(filteredError < rawError * 0.6, filter + " didn't reduce noise enough");
+		}
+	}
+
+	@Test
+	void smoothingFiltersFollowStep() {
+		for (var filter : List.of(PressureFilter.exponential(0.3), PressureFilter.oneEuro(3, 5, 1), PressureFilter.kalman(10, 4e-4))) {
+			for (int i = 0; i < 20; i++)
+				filter.filter(0.2f, i * PERIOD_NANOS);
+			float value = 0f;
+			// 100 ms after the step
+			for (int i = 20; i < 40; i++) {
+				value = filter.filter(0.8f, i * PERIOD_NANOS);
+				assertTrue(value >= 0f && value <= 1f);
+			}
+			assertEquals(0.8f, value, 0.05, filter + " didn't follow step");
+		}
+	}
+
+	@Test
+	void resetStartsAgain() {
+		for (var filter : List.of(PressureFilter.oneEuro(3, 5, 1), PressureFilter.kalman(10, 4e-4))) {
+			for (int i = 0; i < 20; i++)
+				filter.filter(0.9f, i * PERIOD_NANOS);
+			filter.reset();
+			assertEquals(0.1f, filter.filter(0.1f, 20 * PERIOD_NANOS), 1e-6);
+		}
+	}
+
+	@Test
+	void outOfOrderTimestamps() {
+		for (var filter : List.of(PressureFilter.oneEuro(3, 5, 1), PressureFilter.kalman(10, 4e-4))) {
+			filter.filter(0.5f, 10 * PERIOD_NANOS);
+			float value = filter.filter(0.6f, 5 * PERIOD_NANOS);
+			assertTrue(Float.isFinite(value) && value >= 0.5f && value <= 0.6f, filter + " gave " + value);
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jpen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class StalenessEstimatorTest {
+
+	private static long millis(long ms) {
+		return TimeUnit.MILLISECONDS.toNanos(ms);
+	}
+
+	/**
+	 * Record samples at a fixed interval, returning the time of the last sample.
+	 */
+	private static long record(StalenessEstimator estimator, long startNanos, long intervalNanos, int count) {
+		long t = startNanos;
+		for (int i = 0; i < count; i++) {
+			t += intervalNanos;
+			estimator.recordSample(t);
+		}
+		return t;
+	}
+
+	@Test
+	void initialWindowFromFrequency() {
+		assertEquals(millis(30), new StalenessEstimator(100).getWindowNanos());
+		assertEquals(millis(15), new StalenessEstimator(200).getWindowNanos());
+	}
+
+	@Test
+	void initialWindowClamped() {
+		assertEquals(millis(10), new StalenessEstimator(1000).getWindowNanos());
+		assertEquals(millis(250), new StalenessEstimator(1).getWindowNanos());
+		assertEquals(millis(250), new StalenessEstimator(0).getWindowNanos());
+	}
+
+	@Test
+	void learnsWindowFromIntervals() {
+		var estimator = new StalenessEstimator(20);
+		record(estimator, 1L, millis(5), 17);
+		// 5 ms intervals fall in the 5-6 ms bin, and the window is 3x the upper edge
+		assertEquals(millis(18), estimator.getWindowNanos());
+	}
+
+	@Test
+	void learnedWindowClamped() {
+		var estimator = new StalenessEstimator(20);
+		record(estimator, 1L, millis(1), 100);
+		assertEquals(millis(10), estimator.getWindowNanos());
+
+		estimator = new StalenessEstimator(1000);
+		record(estimator, 1L, millis(120), 100);
+		assertEquals(millis(250), estimator.getWindowNanos());
+	}
+
+	@Test
+	void longGapsIgnored() {
+		var estimator = new StalenessEstimator(100);
+		record(estimator, 1L, millis(300), 100);
+		assertEquals(millis(30), estimator.getWindowNanos());
+	}
+
+	@Test
+	void histogramDecays() {
+		var estimator = new StalenessEstimator(100);
+		long t = record(estimator, 1L, millis(20), 600);
+		assertEquals(millis(63), estimator.getWindowNanos());
+		// A brief change in rate isn't enough to move the 99th percentile
+		t = record(estimator, t, millis(2), 100);
+		assertEquals(millis(63), estimator.getWindowNanos());
+		// Without decay, the old intervals would still be more than 1% of the total
+		record(estimator, t, millis(2), 5000);
+		assertEquals(millis(10), estimator.getWindowNanos());
+	}
+
+	@Test
+	void isRecent() {
+		var estimator = new StalenessEstimator(100);
+		long now = millis(1000);
+		assertFalse(estimator.isRecent(0L, now));
+		assertTrue(estimator.isRecent(now - millis(30), now));
+		assertFalse(estimator.isRecent(now - millis(31), now));
+	}
+
+}